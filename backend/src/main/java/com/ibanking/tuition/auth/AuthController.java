@@ -1,87 +1,204 @@
 package com.ibanking.tuition.auth;
 
+import com.ibanking.tuition.payment.PaymentService;
 import com.ibanking.tuition.payment.PaymentTransaction;
-import com.ibanking.tuition.payment.PaymentTransactionRepository;
 import com.ibanking.tuition.security.JwtService;
+import com.ibanking.tuition.security.PasswordHashingExecutor;
+import com.ibanking.tuition.security.RefreshTokenStore;
+import com.ibanking.tuition.security.TokenVersionStore;
 import com.ibanking.tuition.user.Customer;
 import com.ibanking.tuition.user.CustomerRepository;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import org.springframework.security.core.Authentication;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
-    private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
     private final CustomerRepository customerRepository;
     private final PasswordEncoder passwordEncoder;
-    private final UserDetailsService userDetailsService;
-    private final PaymentTransactionRepository paymentTransactionRepository;
+    private final PaymentService paymentService;
+    private final TokenVersionStore tokenVersionStore;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final RefreshTokenStore refreshTokenStore;
+    private final Executor requestExecutor;
+    private final TransactionTemplate transactionTemplate;
 
-    public AuthController(AuthenticationManager authenticationManager, JwtService jwtService, CustomerRepository customerRepository, PasswordEncoder passwordEncoder, UserDetailsService userDetailsService, PaymentTransactionRepository paymentTransactionRepository) {
-        this.authenticationManager = authenticationManager;
+    public AuthController(JwtService jwtService, CustomerRepository customerRepository, PasswordEncoder passwordEncoder, PaymentService paymentService, TokenVersionStore tokenVersionStore, PasswordHashingExecutor passwordHashingExecutor, RefreshTokenStore refreshTokenStore,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor requestExecutor,
+                          PlatformTransactionManager transactionManager) {
         this.jwtService = jwtService;
         this.customerRepository = customerRepository;
         this.passwordEncoder = passwordEncoder;
-        this.userDetailsService = userDetailsService;
-        this.paymentTransactionRepository = paymentTransactionRepository;
+        this.paymentService = paymentService;
+        this.tokenVersionStore = tokenVersionStore;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.refreshTokenStore = refreshTokenStore;
+        this.requestExecutor = requestExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    /**
+     * Log in with one query for the customer and their pending transaction. The BCrypt check runs
+     * on the bounded hashing pool; when that pool is saturated the login is refused with 503
+     * instead of queueing behind it. Issuing the tokens needs Redis round trips, so it continues
+     * on the application's (virtual-thread) task executor and the hashing pool only hashes.
+     */
     @PostMapping("/login")
-    public ResponseEntity<?> login(@Valid @RequestBody LoginRequest request) {
-        try {
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(request.username().toLowerCase(), request.password()));
-        } catch (BadCredentialsException ex) {
-            return ResponseEntity.status(401).body(Map.of("message", "Invalid credentials"));
+    public CompletableFuture<ResponseEntity<?>> login(@Valid @RequestBody LoginRequest request) {
+        List<LoginCandidate> rows = customerRepository.findLoginCandidates(Customer.normalizeUsername(request.username()));
+        Customer c = rows.isEmpty() ? null : rows.get(0).customer();
+
+        return passwordHashingExecutor.matches(request.password(), c != null ? c.getPasswordHash() : null)
+            .<ResponseEntity<?>>thenApplyAsync(matches -> {
+                if (!matches) {
+                    return ResponseEntity.status(401).body(Map.of("message", "Invalid credentials"));
+                }
+                UserDetails userDetails = CustomUserDetailsService.toUserDetails(c);
+                long tokenVersion = tokenVersionStore.current(c.getId());
+                String token = jwtService.generateToken(userDetails, c.getId(), tokenVersion);
+                String refreshToken = refreshTokenStore.issue(c.getId(), userDetails.getUsername(),
+                        JwtService.roles(userDetails), tokenVersion);
+
+                Map<String, Object> response = new java.util.HashMap<>();
+                response.put("token", token);
+                response.put("refreshToken", refreshToken);
+                response.put("fullName", c.getFullName());
+                response.put("phone", c.getPhone());
+                response.put("email", c.getEmail());
+                response.put("balance", c.getBalance());
+
+                // If there's a pending transaction, include it in the response.
+                // Transactions whose OTP window has already passed no longer count as pending
+                rows.stream()
+                    .map(LoginCandidate::pending)
+                    .filter(txn -> txn != null && PENDING_STATUSES.contains(paymentService.effectiveStatus(txn)))
+                    .findFirst()
+                    .ifPresent(pendingTxn -> {
+                        response.put("pendingTransactionId", pendingTxn.getId());
+                        response.put("pendingTransactionStatus", paymentService.effectiveStatus(pendingTxn).name());
+                        response.put("pendingTransactionCreatedAt", pendingTxn.getCreatedAt().toString());
+                    });
+
+                return ResponseEntity.ok(response);
+            }, requestExecutor)
+            .exceptionally(e -> hashingPoolBusy(e, "Too many login attempts, please try again shortly"));
+    }
+
+    /**
+     * Exchange a refresh token for a new access token and the next refresh token, without a
+     * password check. Each refresh token works once; presenting one again revokes its whole family.
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@Valid @RequestBody RefreshRequest request) {
+        RefreshTokenStore.Rotation rotation = refreshTokenStore.rotate(request.refreshToken());
+        if (rotation.outcome() == RefreshTokenStore.Outcome.REUSED) {
+            System.err.println("Refresh token reuse detected; token family revoked");
+            return ResponseEntity.status(401).body(Map.of("message", "Session revoked, please log in again"));
+        }
+        if (rotation.outcome() == RefreshTokenStore.Outcome.INVALID) {
+            return ResponseEntity.status(401).body(Map.of("message", "Invalid refresh token"));
         }
-        UserDetails userDetails = userDetailsService.loadUserByUsername(request.username());
-        String token = jwtService.generateToken(userDetails.getUsername());
-        Customer c = customerRepository.findByUsernameIgnoreCase(userDetails.getUsername()).orElseThrow();
-        
-        // Check if there's a pending transaction for this customer
-        List<PaymentTransaction.Status> pendingStatuses = List.of(
-            PaymentTransaction.Status.PENDING_OTP,
-            PaymentTransaction.Status.PROCESSING
-        );
-        List<PaymentTransaction> pendingTransactions = paymentTransactionRepository
-            .findByPayerCustomerIdAndStatusIn(c.getId(), pendingStatuses);
-        
-        Map<String, Object> response = new java.util.HashMap<>();
-        response.put("token", token);
-        response.put("fullName", c.getFullName());
-        response.put("phone", c.getPhone());
-        response.put("email", c.getEmail());
-        response.put("balance", c.getBalance());
-        
-        // If there's a pending transaction, include it in the response
-        if (!pendingTransactions.isEmpty()) {
-            PaymentTransaction pendingTxn = pendingTransactions.get(0);
-            response.put("pendingTransactionId", pendingTxn.getId());
-            response.put("pendingTransactionStatus", pendingTxn.getStatus().name());
-            response.put("pendingTransactionCreatedAt", pendingTxn.getCreatedAt().toString());
+        // Sessions from before a password change cannot be extended
+        if (rotation.tokenVersion() < tokenVersionStore.current(rotation.customerId())) {
+            refreshTokenStore.revoke(rotation.refreshToken());
+            return ResponseEntity.status(401).body(Map.of("message", "Session revoked, please log in again"));
         }
-        
-        return ResponseEntity.ok(response);
+        String token = jwtService.generateToken(rotation.username(), rotation.customerId(),
+                rotation.roles(), rotation.tokenVersion());
+        return ResponseEntity.ok(Map.of("token", token, "refreshToken", rotation.refreshToken()));
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@Valid @RequestBody RefreshRequest request) {
+        refreshTokenStore.revoke(request.refreshToken());
+        return ResponseEntity.ok(Map.of("message", "Logged out"));
     }
 
+    public record RefreshRequest(@NotBlank String refreshToken) {}
+
+    private static final List<PaymentTransaction.Status> PENDING_STATUSES = List.of(
+        PaymentTransaction.Status.PENDING_OTP,
+        PaymentTransaction.Status.PROCESSING
+    );
+
     public record LoginRequest(@NotBlank String username, @NotBlank String password) {}
 
+    /**
+     * Change the password and revoke every token issued with the old one. Checking the current
+     * password and hashing the new one run on the bounded hashing pool, like login, and a
+     * saturated pool answers 503. The new hash is flushed before the token version is bumped and
+     * committed after it, so a failure at either step leaves the old password in place.
+     */
+    @PostMapping("/change-password")
+    public CompletableFuture<ResponseEntity<?>> changePassword(Authentication auth, @Valid @RequestBody ChangePasswordRequest request) {
+        Customer c = customerRepository.findByUsernameNormalized(Customer.normalizeUsername(auth.getName())).orElseThrow();
+
+        return passwordHashingExecutor.matches(request.currentPassword(), c.getPasswordHash())
+            .thenCompose(matches -> matches
+                ? passwordHashingExecutor.encode(request.newPassword()).thenApply(Optional::of)
+                : CompletableFuture.completedFuture(Optional.<String>empty()))
+            .<ResponseEntity<?>>thenApplyAsync(newHash -> {
+                if (newHash.isEmpty()) {
+                    return ResponseEntity.status(401).body(Map.of("message", "Invalid credentials"));
+                }
+                return transactionTemplate.execute(status -> {
+                    c.setPasswordHash(newHash.get());
+                    customerRepository.saveAndFlush(c);
+
+                    // Revoke every token issued with the old password, including the one used for this request
+                    long version = tokenVersionStore.bump(c.getId());
+                    UserDetails userDetails = CustomUserDetailsService.toUserDetails(c);
+                    return ResponseEntity.ok(Map.of(
+                            "message", "Password changed",
+                            "token", jwtService.generateToken(userDetails, c.getId(), version),
+                            "refreshToken", refreshTokenStore.issue(c.getId(), userDetails.getUsername(), JwtService.roles(userDetails), version)
+                    ));
+                });
+            }, requestExecutor)
+            .exceptionally(e -> hashingPoolBusy(e, "Too many password changes, please try again shortly"));
+    }
+
+    // A saturated hashing pool is reported as 503; anything else propagates
+    private static ResponseEntity<?> hashingPoolBusy(Throwable e, String message) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(503).header("Retry-After", "1").body(Map.of("message", message));
+        }
+        throw new CompletionException(cause);
+    }
+
+    // BCrypt ignores everything past the first 72 bytes of a password
+    public record ChangePasswordRequest(
+            @NotBlank String currentPassword,
+            @NotBlank
+            @Size(min = 8, max = 72, message = "Password must be 8 to 72 characters")
+            @Pattern(regexp = "(?=.*\\p{L})(?=.*\\d).*", message = "Password must contain a letter and a digit")
+            String newPassword) {}
+
     @GetMapping("/me")
     public ResponseEntity<?> me(Authentication auth) {
-        Customer c = customerRepository.findByUsernameIgnoreCase(auth.getName()).orElseThrow();
+        Customer c = customerRepository.findByUsernameNormalized(Customer.normalizeUsername(auth.getName())).orElseThrow();
         return ResponseEntity.ok(Map.of(
                 "fullName", c.getFullName(),
                 "phone", c.getPhone(),
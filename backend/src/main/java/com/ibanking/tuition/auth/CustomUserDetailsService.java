@@ -19,11 +19,15 @@ public class CustomUserDetailsService implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Customer customer = customerRepository.findByUsernameIgnoreCase(username)
+        Customer customer = customerRepository.findByUsernameNormalized(Customer.normalizeUsername(username))
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        return toUserDetails(customer);
+    }
+
+    public static UserDetails toUserDetails(Customer customer) {
         return User.withUsername(customer.getUsername())
                 .password(customer.getPasswordHash())
-                .roles("USER")
+                .roles(customer.isAdmin() ? new String[] {"USER", "ADMIN"} : new String[] {"USER"})
                 .build();
     }
 }
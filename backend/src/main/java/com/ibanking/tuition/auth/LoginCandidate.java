@@ -0,0 +1,10 @@
+package com.ibanking.tuition.auth;
+
+import com.ibanking.tuition.payment.PaymentTransaction;
+import com.ibanking.tuition.user.Customer;
+
+/**
+ * A customer together with one of their PENDING_OTP/PROCESSING transactions (null if none),
+ * loaded for login in a single query
+ */
+public record LoginCandidate(Customer customer, PaymentTransaction pending) {}
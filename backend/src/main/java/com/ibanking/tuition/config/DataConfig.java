@@ -7,5 +7,3 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 @EnableTransactionManagement
 public class DataConfig {
 }
-
-
@@ -1,6 +1,7 @@
 package com.ibanking.tuition.config;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -12,6 +13,13 @@ import java.util.Properties;
 @Configuration
 public class EmailConfig {
 
+    // Protocol tracing on every send is far too noisy outside local debugging
+    private final boolean mailDebug;
+
+    public EmailConfig(@Value("${app.mail.debug}") boolean mailDebug) {
+        this.mailDebug = mailDebug;
+    }
+
     @Bean("gmailSender")
     @Primary
     public JavaMailSender gmailSender() {
@@ -29,7 +37,7 @@ public class EmailConfig {
         props.put("mail.smtp.connectiontimeout", "5000");
         props.put("mail.smtp.timeout", "5000");
         props.put("mail.smtp.writetimeout", "5000");
-        props.put("mail.debug", "true");
+        props.put("mail.debug", String.valueOf(mailDebug));
         
         return mailSender;
     }
@@ -50,7 +58,7 @@ public class EmailConfig {
         props.put("mail.smtp.connectiontimeout", "5000");
         props.put("mail.smtp.timeout", "5000");
         props.put("mail.smtp.writetimeout", "5000");
-        props.put("mail.debug", "true");
+        props.put("mail.debug", String.valueOf(mailDebug));
         
         return mailSender;
     }
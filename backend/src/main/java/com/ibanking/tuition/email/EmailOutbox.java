@@ -0,0 +1,69 @@
+package com.ibanking.tuition.email;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "email_outbox")
+public class EmailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(columnDefinition = "text")
+    private String htmlBody; // Cleared once sent so OTP codes do not stay at rest
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private OffsetDateTime createdAt;
+
+    @Column(nullable = false)
+    private OffsetDateTime nextAttemptAt;
+
+    @Column
+    private OffsetDateTime sentAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public enum Status { PENDING, SENT, FAILED }
+
+    // Default constructor
+    public EmailOutbox() {}
+
+    // Getters
+    public Long getId() { return id; }
+    public String getRecipient() { return recipient; }
+    public String getSubject() { return subject; }
+    public String getHtmlBody() { return htmlBody; }
+    public Status getStatus() { return status; }
+    public int getAttempts() { return attempts; }
+    public OffsetDateTime getCreatedAt() { return createdAt; }
+    public OffsetDateTime getNextAttemptAt() { return nextAttemptAt; }
+    public OffsetDateTime getSentAt() { return sentAt; }
+    public String getLastError() { return lastError; }
+
+    // Setters
+    public void setId(Long id) { this.id = id; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+    public void setSubject(String subject) { this.subject = subject; }
+    public void setHtmlBody(String htmlBody) { this.htmlBody = htmlBody; }
+    public void setStatus(Status status) { this.status = status; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public void setCreatedAt(OffsetDateTime createdAt) { this.createdAt = createdAt; }
+    public void setNextAttemptAt(OffsetDateTime nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public void setSentAt(OffsetDateTime sentAt) { this.sentAt = sentAt; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,159 @@
+package com.ibanking.tuition.email;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends messages from the email outbox in the background. A drain is triggered right after a
+ * transaction that queued mail commits, and a periodic sweep picks up anything left behind
+ * (crash between commit and wake-up, SMTP outage, rows written by other nodes).
+ * One drain runs per pooled SMTP connection; SKIP LOCKED and the lease hand each of them a
+ * disjoint batch. No database transaction is open while mail is sent: a batch is claimed and
+ * leased in one short transaction, sent, and its results recorded in a second one, so a slow
+ * SMTP server ties up SMTP connections but not database connections. A message whose result is
+ * never recorded (crash mid-send) becomes due again when its lease runs out.
+ */
+@Component
+public class EmailOutboxDispatcher {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+
+    private final int workers;
+    private final ExecutorService worker;
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository,
+                                 EmailService emailService,
+                                 PooledMailTransport mailTransport,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${app.mail.outbox.batchSize}") int batchSize,
+                                 @Value("${app.mail.outbox.maxAttempts}") int maxAttempts,
+                                 @Value("${app.mail.outbox.leaseSeconds}") long leaseSeconds) {
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        if (lease.toMillis() <= mailTransport.borrowTimeoutMillis()) {
+            // Otherwise a batch still waiting for a connection could be claimed again and sent twice
+            throw new IllegalArgumentException("app.mail.outbox.leaseSeconds must exceed app.mail.pool.borrowTimeoutMillis");
+        }
+        this.workers = mailTransport.size();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.worker = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "email-outbox-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Wake the dispatcher once the queuing transaction has committed; nothing is sent for a
+     * transaction that rolls back. Falls back to immediate execution when no transaction is active.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmailQueued(EmailQueuedEvent event) {
+        requestDrain();
+    }
+
+    @Scheduled(fixedDelayString = "${app.mail.outbox.pollMillis}")
+    public void sweep() {
+        requestDrain();
+    }
+
+    private void requestDrain() {
+        // Coalesce bursts of wake-ups into at most one pending drain per connection
+        if (pendingDrains.getAndUpdate(n -> n < workers ? n + 1 : n) < workers) {
+            worker.execute(() -> {
+                pendingDrains.decrementAndGet();
+                try {
+                    drain();
+                } catch (Exception e) {
+                    System.err.println("Email outbox drain failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        int processed;
+        do {
+            processed = drainBatch();
+        } while (processed == batchSize);
+    }
+
+    private int drainBatch() {
+        // Claim and lease: the rows stop being due, so no other drain picks them up while we send
+        List<EmailOutbox> batch = transactionTemplate.execute(status -> {
+            OffsetDateTime now = OffsetDateTime.now();
+            List<EmailOutbox> claimed = outboxRepository.claimDue(now, batchSize);
+            for (EmailOutbox message : claimed) {
+                message.setNextAttemptAt(now.plus(lease));
+            }
+            return claimed;
+        });
+        if (batch == null || batch.isEmpty()) return 0;
+
+        List<Exception> results = emailService.deliver(batch);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < batch.size(); i++) {
+                record(batch.get(i), results.get(i));
+            }
+        });
+        return batch.size();
+    }
+
+    private void record(EmailOutbox message, Exception failure) {
+        if (failure instanceof PooledMailTransport.PoolExhaustedException) {
+            // Never reached the SMTP server: not an attempt, just hand the message back
+            message.setNextAttemptAt(OffsetDateTime.now());
+        } else if (failure == null) {
+            message.setStatus(EmailOutbox.Status.SENT);
+            message.setSentAt(OffsetDateTime.now());
+            message.setHtmlBody(null);
+            message.setLastError(null);
+        } else {
+            int attempts = message.getAttempts() + 1;
+            message.setAttempts(attempts);
+            message.setLastError(truncate(failure.getMessage()));
+            if (attempts >= maxAttempts) {
+                message.setStatus(EmailOutbox.Status.FAILED);
+                System.err.println("Giving up on email " + message.getId() + " after " + attempts + " attempts: " + failure.getMessage());
+            } else {
+                // Exponential backoff: 2s, 4s, 8s ... capped at 5 minutes
+                long delaySeconds = Math.min(300, 1L << attempts);
+                message.setNextAttemptAt(OffsetDateTime.now().plusSeconds(delaySeconds));
+            }
+        }
+        outboxRepository.save(message);
+    }
+
+    private static String truncate(String value) {
+        if (value == null) return null;
+        return value.length() <= 1000 ? value : value.substring(0, 1000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdown();
+    }
+}
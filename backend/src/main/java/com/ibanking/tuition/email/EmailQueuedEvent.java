@@ -0,0 +1,6 @@
+package com.ibanking.tuition.email;
+
+/**
+ * Published when a message is written to the outbox; the dispatcher reacts after commit.
+ */
+public record EmailQueuedEvent(Long outboxId) {}
@@ -5,35 +5,109 @@ import com.ibanking.tuition.payment.PaymentTransaction;
 import com.ibanking.tuition.tuition.StudentTuition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @Service
 public class EmailService {
 
     private final JavaMailSender gmailSender;
     private final JavaMailSender mailPitSender;
+    private final PooledMailTransport mailTransport;
+    private final EmailOutboxRepository outboxRepository;
+    private final ApplicationEventPublisher eventPublisher;
     private final int otpTtlSeconds;
 
     public EmailService(@Qualifier("gmailSender") JavaMailSender gmailSender, 
                        @Qualifier("mailPitSender") JavaMailSender mailPitSender,
+                       PooledMailTransport mailTransport,
+                       EmailOutboxRepository outboxRepository,
+                       ApplicationEventPublisher eventPublisher,
                        @Value("${app.otp.ttlSeconds}") int otpTtlSeconds) {
         this.gmailSender = gmailSender;
         this.mailPitSender = mailPitSender;
+        this.mailTransport = mailTransport;
+        this.outboxRepository = outboxRepository;
+        this.eventPublisher = eventPublisher;
         this.otpTtlSeconds = otpTtlSeconds;
     }
 
-    public void sendOtpEmail(Customer payer, String otp, PaymentTransaction txn, StudentTuition tuition) {
-        // Send to MailPit (for testing)
-        sendOtpEmailToMailPit(payer, otp, txn, tuition);
+    /**
+     * Queue the OTP email in the outbox as part of the caller's transaction.
+     * It is sent by {@link EmailOutboxDispatcher} after commit, never for a rolled-back transaction.
+     */
+    @Transactional
+    public void queueOtpEmail(Customer payer, String otp, PaymentTransaction txn, StudentTuition tuition) {
+        String amountStr = String.format("%,.0f VND", tuition.getAmount().doubleValue());
+        String html = createOtpEmailHtml(payer, otp, txn, tuition, amountStr, true);
+        enqueue(payer.getEmail(), "iBanking Tuition Payment – OTP Verification", html);
     }
     
-    public void sendPaymentConfirmationEmail(Customer payer, PaymentTransaction txn, StudentTuition tuition) {
-        // Send payment confirmation to MailPit
-        sendPaymentConfirmationToMailPit(payer, txn, tuition);
+    /**
+     * Queue the payment confirmation in the outbox as part of the caller's transaction
+     */
+    @Transactional
+    public void queuePaymentConfirmationEmail(Customer payer, PaymentTransaction txn, StudentTuition tuition) {
+        String amountStr = String.format("%,.0f VND", tuition.getAmount().doubleValue());
+        String html = createPaymentConfirmationHtml(payer, txn, tuition, amountStr);
+        enqueue(payer.getEmail(), "iBanking Tuition Payment – Payment Confirmation", html);
+    }
+    
+    /**
+     * Send a batch of outbox messages to MailPit over one pooled SMTP connection
+     * @param batch Messages to send
+     * @return list aligned with {@code batch}: null where the message was sent, the failure otherwise
+     */
+    public List<Exception> deliver(List<EmailOutbox> batch) {
+        List<Exception> results = new ArrayList<>(Collections.nCopies(batch.size(), (Exception) null));
+        List<MimeMessage> mimes = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                mimes.add(toMimeMessage(batch.get(i)));
+                positions.add(i);
+            } catch (MessagingException e) {
+                results.set(i, e);
+            }
+        }
+        List<Exception> sent = mailTransport.sendBatch(mimes);
+        for (int i = 0; i < sent.size(); i++) {
+            results.set(positions.get(i), sent.get(i));
+        }
+        return results;
+    }
+    
+    private MimeMessage toMimeMessage(EmailOutbox message) throws MessagingException {
+        MimeMessage mime = mailPitSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mime, false, "UTF-8");
+        helper.setFrom("no-reply@ibanking.local");
+        helper.setTo(message.getRecipient());
+        helper.setSubject(message.getSubject());
+        helper.setText(message.getHtmlBody(), true);
+        return mime;
+    }
+    
+    private void enqueue(String recipient, String subject, String html) {
+        EmailOutbox message = new EmailOutbox();
+        message.setRecipient(recipient);
+        message.setSubject(subject);
+        message.setHtmlBody(html);
+        message.setStatus(EmailOutbox.Status.PENDING);
+        message.setAttempts(0);
+        message.setCreatedAt(OffsetDateTime.now());
+        message.setNextAttemptAt(OffsetDateTime.now());
+        message = outboxRepository.save(message);
+        eventPublisher.publishEvent(new EmailQueuedEvent(message.getId()));
     }
     
     private void sendOtpEmailToGmail(Customer payer, String otp, PaymentTransaction txn, StudentTuition tuition) {
@@ -57,48 +131,6 @@ public class EmailService {
         }
     }
     
-    private void sendOtpEmailToMailPit(Customer payer, String otp, PaymentTransaction txn, StudentTuition tuition) {
-        try {
-            MimeMessage mime = mailPitSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mime, false, "UTF-8");
-            helper.setFrom("no-reply@ibanking.local");
-            helper.setTo(payer.getEmail());
-            helper.setSubject("iBanking Tuition Payment – OTP Verification");
-            
-            String amountStr = String.format("%,.0f VND", tuition.getAmount().doubleValue());
-            String html = createOtpEmailHtml(payer, otp, txn, tuition, amountStr, true);
-            
-            helper.setText(html, true);
-            mailPitSender.send(mime);
-            System.out.println("[MAILPIT] OTP email sent successfully to MailPit");
-            
-        } catch (Exception e) {
-            System.err.println("[MAILPIT] Failed to send email to MailPit: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-    
-    private void sendPaymentConfirmationToMailPit(Customer payer, PaymentTransaction txn, StudentTuition tuition) {
-        try {
-            MimeMessage mime = mailPitSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mime, false, "UTF-8");
-            helper.setFrom("no-reply@ibanking.local");
-            helper.setTo(payer.getEmail());
-            helper.setSubject("iBanking Tuition Payment – Payment Confirmation");
-            
-            String amountStr = String.format("%,.0f VND", tuition.getAmount().doubleValue());
-            String html = createPaymentConfirmationHtml(payer, txn, tuition, amountStr);
-            
-            helper.setText(html, true);
-            mailPitSender.send(mime);
-            System.out.println("[MAILPIT] Payment confirmation email sent successfully to MailPit");
-            
-        } catch (Exception e) {
-            System.err.println("[MAILPIT] Failed to send payment confirmation email to MailPit: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-    
     private String createOtpEmailHtml(Customer payer, String otp, PaymentTransaction txn, 
                                     StudentTuition tuition, String amountStr, boolean isTest) {
         String title = "iBanking Tuition Payment";
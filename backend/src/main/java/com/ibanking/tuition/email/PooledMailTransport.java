@@ -0,0 +1,202 @@
+package com.ibanking.tuition.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of open SMTP connections to MailPit. {@link JavaMailSenderImpl#send} opens,
+ * handshakes and closes a connection per message; here each connection stays open and sends
+ * whole batches, and is recycled when it breaks or has carried its share of messages.
+ */
+@Component
+public class PooledMailTransport {
+
+    private final JavaMailSenderImpl sender;
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> connections = new ArrayList<>();
+    private final int maxMessagesPerConnection;
+    private final long borrowTimeoutMillis;
+    private final Counter reconnects;
+
+    /**
+     * Reported for every message of a batch when no connection became free within the borrow timeout
+     */
+    public static class PoolExhaustedException extends IllegalStateException {
+        PoolExhaustedException() {
+            super("No SMTP connection available");
+        }
+    }
+
+    private final class PooledConnection {
+        final Counter sent;
+        final Counter failed;
+        final Timer sendTime;
+        Transport transport;
+        int messagesOnTransport;
+
+        PooledConnection(int index, MeterRegistry meterRegistry) {
+            String tag = String.valueOf(index);
+            this.sent = Counter.builder("mail.pool.sent")
+                    .description("Messages accepted by the SMTP server on this connection")
+                    .tag("connection", tag)
+                    .register(meterRegistry);
+            this.failed = Counter.builder("mail.pool.failed")
+                    .description("Messages rejected or lost on this connection")
+                    .tag("connection", tag)
+                    .register(meterRegistry);
+            this.sendTime = Timer.builder("mail.pool.send.time")
+                    .description("Time to hand one message to the SMTP server")
+                    .tag("connection", tag)
+                    .register(meterRegistry);
+        }
+
+        Transport ensureConnected() throws MessagingException {
+            if (transport != null && (!transport.isConnected() || messagesOnTransport >= maxMessagesPerConnection)) {
+                close();
+            }
+            if (transport == null) {
+                Transport t = sender.getSession().getTransport(sender.getProtocol());
+                String username = sender.getUsername();
+                String password = sender.getPassword();
+                if (username == null || username.isEmpty()) {
+                    username = null;
+                    password = null;
+                }
+                t.connect(sender.getHost(), sender.getPort(), username, password);
+                transport = t;
+                messagesOnTransport = 0;
+                reconnects.increment();
+            }
+            return transport;
+        }
+
+        void close() {
+            if (transport == null) return;
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // Connection is being discarded anyway
+            }
+            transport = null;
+        }
+    }
+
+    public PooledMailTransport(@Qualifier("mailPitSender") JavaMailSender mailPitSender,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.mail.pool.size}") int poolSize,
+                               @Value("${app.mail.pool.maxMessagesPerConnection}") int maxMessagesPerConnection,
+                               @Value("${app.mail.pool.borrowTimeoutMillis}") long borrowTimeoutMillis) {
+        this.sender = (JavaMailSenderImpl) mailPitSender;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+        this.reconnects = Counter.builder("mail.pool.connects")
+                .description("SMTP connections opened, including reconnects after a broken or retired connection")
+                .register(meterRegistry);
+        for (int i = 0; i < poolSize; i++) {
+            PooledConnection connection = new PooledConnection(i, meterRegistry);
+            connections.add(connection);
+            idle.add(connection);
+        }
+        Gauge.builder("mail.pool.idle", idle, BlockingQueue::size)
+                .description("Pooled SMTP connections not currently sending")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return number of connections, i.e. how many batches can be sent in parallel
+     */
+    public int size() {
+        return connections.size();
+    }
+
+    /**
+     * @return longest time {@link #sendBatch} waits for a free connection
+     */
+    public long borrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    /**
+     * Send a batch of messages over one pooled connection. A message that fails because the
+     * connection broke is retried once on a fresh connection; other failures are reported per message.
+     * @param messages Messages to send
+     * @return list aligned with {@code messages}: null where the message was sent, the failure otherwise
+     */
+    public List<Exception> sendBatch(List<MimeMessage> messages) {
+        List<Exception> results = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) return results;
+        PooledConnection connection;
+        try {
+            connection = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connection = null;
+        }
+        if (connection == null) {
+            Exception busy = new PoolExhaustedException();
+            for (int i = 0; i < messages.size(); i++) results.add(busy);
+            return results;
+        }
+
+        try {
+            for (MimeMessage message : messages) {
+                results.add(send(connection, message));
+            }
+        } finally {
+            idle.add(connection);
+        }
+        return results;
+    }
+
+    private Exception send(PooledConnection connection, MimeMessage message) {
+        Exception failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long start = System.nanoTime();
+            try {
+                Transport transport = connection.ensureConnected();
+                if (message.getSentDate() == null) {
+                    message.setSentDate(new java.util.Date());
+                }
+                message.saveChanges();
+                transport.sendMessage(message, message.getAllRecipients());
+                connection.messagesOnTransport++;
+                connection.sendTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                connection.sent.increment();
+                return null;
+            } catch (MessagingException e) {
+                failure = e;
+                // A dropped connection is worth one retry on a new one; a rejected message is not
+                boolean broken = connection.transport == null || !connection.transport.isConnected();
+                if (!broken) break;
+                connection.close();
+            }
+        }
+        connection.failed.increment();
+        return failure;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PooledConnection connection : connections) {
+            connection.close();
+        }
+    }
+}
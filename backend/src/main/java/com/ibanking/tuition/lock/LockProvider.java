@@ -0,0 +1,35 @@
+package com.ibanking.tuition.lock;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Backend for the payer/tuition locks taken on the payment path.
+ * Implementations acquire a set of keys all-or-nothing and hand back an owner token.
+ * The active implementation is selected with {@code app.lock.provider}.
+ */
+public interface LockProvider {
+
+    /**
+     * Try to acquire every key at once without blocking
+     * @param lockKeys Keys to lock, already de-duplicated and sorted by the caller
+     * @param ttl How long the locks may be held before they expire on their own
+     * @return owner token if all keys were acquired, null if any key is held by someone else
+     */
+    String tryAcquire(List<String> lockKeys, Duration ttl);
+
+    /**
+     * Release keys that are still owned by the given token
+     * @param lockKeys Keys passed to {@link #tryAcquire}
+     * @param token Owner token returned by {@link #tryAcquire}
+     */
+    void release(List<String> lockKeys, String token);
+
+    /**
+     * @return true if locks are only actually freed when the surrounding DB transaction ends,
+     *         so waiters must not be woken before then
+     */
+    default boolean releasesOnTransactionEnd() {
+        return false;
+    }
+}
@@ -0,0 +1,145 @@
+package com.ibanking.tuition.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per-key queues of requests waiting for a contended lock. Instead of sleeping and polling,
+ * a waiter parks until the holder releases one of its keys (locally, or on another node via
+ * {@link RedisLockReleaseListener}) and is woken in FIFO order, bounded by a deadline.
+ */
+@Component
+public class LockWaitQueue {
+
+    /** Identifies this JVM in release notifications so it can skip its own messages */
+    public static final String NODE_ID = UUID.randomUUID().toString();
+
+    private final Map<String, ArrayDeque<Waiter>> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Counter acquiredAfterWait;
+    private final Counter timedOut;
+    private final Timer waitTime;
+
+    private static final class Waiter {
+        final List<String> keys;
+        final Semaphore wakeUp = new Semaphore(0);
+
+        Waiter(List<String> keys) { this.keys = keys; }
+    }
+
+    public LockWaitQueue(MeterRegistry meterRegistry) {
+        Gauge.builder("lock.wait.queue.depth", waiting, AtomicInteger::get)
+                .description("Requests currently parked waiting for a payment lock")
+                .register(meterRegistry);
+        Gauge.builder("lock.wait.queue.max.key.depth", queues, LockWaitQueue::maxKeyDepth)
+                .description("Longest per-key waiter queue")
+                .register(meterRegistry);
+        this.acquiredAfterWait = Counter.builder("lock.wait.acquired")
+                .description("Locks acquired after waiting in the queue")
+                .register(meterRegistry);
+        this.timedOut = Counter.builder("lock.wait.timeouts")
+                .description("Waiters that gave up at their deadline")
+                .register(meterRegistry);
+        this.waitTime = Timer.builder("lock.wait.time")
+                .description("Time spent parked before acquiring or giving up")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Park until {@code attempt} succeeds or the deadline passes. The attempt is retried each
+     * time one of the keys is released.
+     * @param lockKeys Keys the caller is trying to lock
+     * @param maxWait Upper bound on the time spent waiting
+     * @param attempt Non-blocking acquisition returning an owner token or null
+     * @return owner token, or null if the deadline passed
+     */
+    public String await(List<String> lockKeys, Duration maxWait, Supplier<String> attempt) {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        long start = System.nanoTime();
+        Waiter waiter = new Waiter(lockKeys);
+        enqueue(waiter, false);
+        try {
+            while (true) {
+                // Retry after registering so a release that raced with registration is not missed
+                String token = attempt.get();
+                if (token != null) {
+                    acquiredAfterWait.increment();
+                    return token;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !waiter.wakeUp.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                    timedOut.increment();
+                    return null;
+                }
+                // Woken but may still lose to another node: keep our place at the front
+                enqueue(waiter, true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            leave(waiter);
+            waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Wake the longest-waiting request for each released key
+     * @param lockKeys Keys that were just released
+     */
+    public void signal(Collection<String> lockKeys) {
+        for (String key : lockKeys) {
+            Waiter[] head = new Waiter[1];
+            queues.computeIfPresent(key, (k, queue) -> {
+                head[0] = queue.pollFirst();
+                return queue.isEmpty() ? null : queue;
+            });
+            if (head[0] != null) {
+                head[0].wakeUp.release();
+            }
+        }
+    }
+
+    private void enqueue(Waiter waiter, boolean front) {
+        if (!front) waiting.incrementAndGet();
+        for (String key : waiter.keys) {
+            queues.compute(key, (k, queue) -> {
+                if (queue == null) queue = new ArrayDeque<>();
+                if (!queue.contains(waiter)) {
+                    if (front) queue.addFirst(waiter); else queue.addLast(waiter);
+                }
+                return queue;
+            });
+        }
+    }
+
+    private void leave(Waiter waiter) {
+        for (String key : waiter.keys) {
+            queues.computeIfPresent(key, (k, queue) -> {
+                queue.remove(waiter);
+                return queue.isEmpty() ? null : queue;
+            });
+        }
+        waiting.decrementAndGet();
+    }
+
+    private static double maxKeyDepth(Map<String, ArrayDeque<Waiter>> queues) {
+        return queues.values().stream().mapToInt(ArrayDeque::size).max().orElse(0);
+    }
+}
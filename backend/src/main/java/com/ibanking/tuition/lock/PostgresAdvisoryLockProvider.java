@@ -0,0 +1,62 @@
+package com.ibanking.tuition.lock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Transaction-scoped Postgres advisory locks. The locks ride on the payment's own DB
+ * transaction, so no extra service is involved and they are released automatically
+ * on commit or rollback.
+ * Must be called inside an active transaction; {@link #release} is a no-op.
+ * If only some keys are free the acquired ones stay held until the transaction ends,
+ * which is fine because the caller aborts the request in that case.
+ */
+@Component
+@ConditionalOnProperty(name = "app.lock.provider", havingValue = "postgres")
+public class PostgresAdvisoryLockProvider implements LockProvider {
+
+    private static final String TRY_LOCK_SQL =
+            "SELECT bool_and(pg_try_advisory_xact_lock(hashtextextended(k, 0))) " +
+            "FROM (SELECT k FROM unnest(?::text[]) WITH ORDINALITY AS t(k, n) ORDER BY n) keys";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostgresAdvisoryLockProvider(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String tryAcquire(List<String> lockKeys, Duration ttl) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Advisory locks require an active transaction");
+        }
+        Boolean acquired = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(TRY_LOCK_SQL)) {
+                ps.setArray(1, con.createArrayOf("text", lockKeys.toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() && rs.getBoolean(1);
+                }
+            }
+        });
+        return Boolean.TRUE.equals(acquired) ? UUID.randomUUID().toString() : null;
+    }
+
+    @Override
+    public void release(List<String> lockKeys, String token) {
+        // Released by Postgres when the surrounding transaction ends
+    }
+
+    @Override
+    public boolean releasesOnTransactionEnd() {
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ibanking.tuition.lock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Distributed locks in Redis. Works across several backend nodes; costs one round trip to
+ * acquire and one to release.
+ */
+@Component
+@ConditionalOnProperty(name = "app.lock.provider", havingValue = "redis", matchIfMissing = true)
+public class RedisLockProvider implements LockProvider {
+
+    /**
+     * Acquire all given locks atomically in a single round trip.
+     * Either every key is set to the owner token or none is (no partial acquisition).
+     * KEYS = lock keys, ARGV[1] = owner token, ARGV[2] = ttl in milliseconds
+     */
+    private static final DefaultRedisScript<Long> ACQUIRE_LOCKS_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #KEYS do " +
+            "  if redis.call('EXISTS', KEYS[i]) == 1 then return 0 end " +
+            "end " +
+            "for i = 1, #KEYS do " +
+            "  redis.call('SET', KEYS[i], ARGV[1], 'PX', ARGV[2]) " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    /** Channel on which releases are announced so waiters on other nodes wake up */
+    public static final String RELEASE_CHANNEL = "lock:released";
+
+    /**
+     * Compare-and-delete: only remove keys that are still owned by the given token,
+     * so a caller whose lock already expired cannot delete a lock held by someone else.
+     * Announces the release on {@link #RELEASE_CHANNEL} when something was deleted.
+     * KEYS = lock keys, ARGV[1] = owner token, ARGV[2] = channel, ARGV[3] = message
+     */
+    private static final DefaultRedisScript<Long> RELEASE_LOCKS_SCRIPT = new DefaultRedisScript<>(
+            "local released = 0 " +
+            "for i = 1, #KEYS do " +
+            "  if redis.call('GET', KEYS[i]) == ARGV[1] then " +
+            "    redis.call('DEL', KEYS[i]) " +
+            "    released = released + 1 " +
+            "  end " +
+            "end " +
+            "if released > 0 then redis.call('PUBLISH', ARGV[2], ARGV[3]) end " +
+            "return released",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisLockProvider(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String tryAcquire(List<String> lockKeys, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Long acquired = redisTemplate.execute(ACQUIRE_LOCKS_SCRIPT, lockKeys, token, String.valueOf(ttl.toMillis()));
+        return Long.valueOf(1L).equals(acquired) ? token : null;
+    }
+
+    @Override
+    public void release(List<String> lockKeys, String token) {
+        redisTemplate.execute(RELEASE_LOCKS_SCRIPT, lockKeys, token,
+                RELEASE_CHANNEL, LockWaitQueue.NODE_ID + "|" + String.join(",", lockKeys));
+    }
+}
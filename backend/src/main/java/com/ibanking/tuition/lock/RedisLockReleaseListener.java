@@ -0,0 +1,37 @@
+package com.ibanking.tuition.lock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Wakes local waiters when another backend node releases a Redis lock.
+ * Messages are {@code nodeId|key1,key2}; releases made by this node are signalled directly.
+ */
+@Component
+@ConditionalOnProperty(name = "app.lock.provider", havingValue = "redis", matchIfMissing = true)
+public class RedisLockReleaseListener implements MessageListener {
+
+    private final LockWaitQueue lockWaitQueue;
+
+    public RedisLockReleaseListener(RedisMessageListenerContainer container, LockWaitQueue lockWaitQueue) {
+        this.lockWaitQueue = lockWaitQueue;
+        container.addMessageListener(this, new ChannelTopic(RedisLockProvider.RELEASE_CHANNEL));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep < 0 || body.substring(0, sep).equals(LockWaitQueue.NODE_ID)) {
+            return;
+        }
+        lockWaitQueue.signal(Arrays.asList(body.substring(sep + 1).split(",")));
+    }
+}
@@ -0,0 +1,90 @@
+package com.ibanking.tuition.lock;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * In-process lock table for single-node deployments. Keys are spread over a fixed number of
+ * stripes; each stripe guards its own small owner table, so unrelated payments never contend.
+ * Not shared between JVMs - only use it when exactly one backend instance is running.
+ */
+@Component
+@ConditionalOnProperty(name = "app.lock.provider", havingValue = "local")
+public class StripedLockProvider implements LockProvider {
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] stripeLocks = new ReentrantLock[STRIPES];
+    private final List<Map<String, Owner>> stripeTables;
+
+    private record Owner(String token, long expiresAtNanos) {
+        boolean isExpired(long now) { return now - expiresAtNanos >= 0; }
+    }
+
+    public StripedLockProvider() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new ReentrantLock();
+        }
+        this.stripeTables = IntStream.range(0, STRIPES)
+                .<Map<String, Owner>>mapToObj(i -> new HashMap<>())
+                .toList();
+    }
+
+    @Override
+    public String tryAcquire(List<String> lockKeys, Duration ttl) {
+        int[] stripes = stripesOf(lockKeys);
+        // Stripe locks are always taken in ascending order, so two callers can never deadlock
+        for (int stripe : stripes) stripeLocks[stripe].lock();
+        try {
+            long now = System.nanoTime();
+            for (String key : lockKeys) {
+                Owner owner = stripeTables.get(stripeOf(key)).get(key);
+                if (owner != null && !owner.isExpired(now)) {
+                    return null;
+                }
+            }
+            String token = UUID.randomUUID().toString();
+            Owner owner = new Owner(token, now + ttl.toNanos());
+            for (String key : lockKeys) {
+                stripeTables.get(stripeOf(key)).put(key, owner);
+            }
+            return token;
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) stripeLocks[stripes[i]].unlock();
+        }
+    }
+
+    @Override
+    public void release(List<String> lockKeys, String token) {
+        for (String key : lockKeys) {
+            int stripe = stripeOf(key);
+            stripeLocks[stripe].lock();
+            try {
+                Map<String, Owner> table = stripeTables.get(stripe);
+                Owner owner = table.get(key);
+                if (owner != null && owner.token().equals(token)) {
+                    table.remove(key);
+                }
+            } finally {
+                stripeLocks[stripe].unlock();
+            }
+        }
+    }
+
+    private int[] stripesOf(List<String> lockKeys) {
+        return lockKeys.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+    }
+
+    private int stripeOf(String key) {
+        int h = key.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % STRIPES;
+    }
+}
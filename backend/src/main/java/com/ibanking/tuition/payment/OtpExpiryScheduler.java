@@ -0,0 +1,126 @@
+package com.ibanking.tuition.payment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires each PENDING_OTP transaction at its own deadline instead of waiting for a periodic scan.
+ * Deadlines sit in a {@link DelayQueue}; a single thread wakes exactly when the earliest one is due,
+ * so work is proportional to the transactions actually expiring. Pending transactions are reloaded
+ * from the database on startup, and {@link PaymentCleanupService} keeps a slow sweep as a safety net.
+ */
+@Component
+public class OtpExpiryScheduler {
+
+    private final PaymentService paymentService;
+    private final PaymentTransactionRepository paymentTransactionRepository;
+    private final Duration otpTtl;
+
+    private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+    private final Counter expired;
+    private volatile Thread worker;
+
+    private static final class Deadline implements Delayed {
+        final Long transactionId;
+        final long dueAtMillis;
+
+        Deadline(Long transactionId, long dueAtMillis) {
+            this.transactionId = transactionId;
+            this.dueAtMillis = dueAtMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtMillis, ((Deadline) other).dueAtMillis);
+        }
+    }
+
+    public OtpExpiryScheduler(PaymentService paymentService,
+                              PaymentTransactionRepository paymentTransactionRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.otp.ttlSeconds}") int otpTtlSeconds) {
+        this.paymentService = paymentService;
+        this.paymentTransactionRepository = paymentTransactionRepository;
+        this.otpTtl = Duration.ofSeconds(otpTtlSeconds);
+        Gauge.builder("otp.expiry.scheduled", deadlines, DelayQueue::size)
+                .description("PENDING_OTP transactions waiting for their expiry deadline")
+                .register(meterRegistry);
+        this.expired = Counter.builder("otp.expiry.expired")
+                .description("Transactions failed by the expiry scheduler")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedule expiry of a transaction at createdAt + OTP TTL. Scheduling the same transaction
+     * twice is harmless; the expiry update only touches transactions still pending.
+     * @param transactionId Transaction to expire
+     * @param createdAt Creation time of the transaction
+     */
+    public void schedule(Long transactionId, OffsetDateTime createdAt) {
+        Instant due = createdAt.plus(otpTtl).toInstant();
+        // Round up: released even a fraction of a millisecond early, the expiry update would match nothing
+        long dueAt = due.toEpochMilli() + (due.getNano() % 1_000_000 != 0 ? 1 : 0);
+        deadlines.add(new Deadline(transactionId, dueAt));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Recover deadlines of transactions created before this node started (or by other nodes)
+        List<PaymentTransaction> pending = paymentTransactionRepository.findByStatus(PaymentTransaction.Status.PENDING_OTP);
+        for (PaymentTransaction transaction : pending) {
+            schedule(transaction.getId(), transaction.getCreatedAt());
+        }
+        System.out.println("OTP expiry scheduler recovered " + pending.size() + " pending transactions");
+
+        Thread t = new Thread(this::run, "otp-expiry");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Deadline deadline;
+            try {
+                deadline = deadlines.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                if (paymentService.expireIfPending(deadline.transactionId)) {
+                    expired.increment();
+                    System.out.println("Marked expired transaction " + deadline.transactionId + " as FAILED");
+                }
+            } catch (Exception e) {
+                // Leave it to the fallback sweep rather than spinning on a failing database
+                System.err.println("Failed to expire transaction " + deadline.transactionId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread t = worker;
+        if (t != null) t.interrupt();
+    }
+}
@@ -0,0 +1,119 @@
+package com.ibanking.tuition.payment;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Produces OTP codes in one of two modes ({@code app.otp.mode}):
+ * <ul>
+ *   <li>{@code random} - a random code that {@link OtpStore} keeps in Redis</li>
+ *   <li>{@code hmac} - a TOTP-style code derived from a server secret, the transaction id,
+ *       its resend counter and the time step; nothing but counters is stored and
+ *       verification is a local constant-time computation</li>
+ * </ul>
+ */
+@Component
+public class OtpGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final boolean stateless;
+    private final int otpLength;
+    private final int modulus;
+    private final long stepSeconds;
+    private final int window;
+    private final Mac macPrototype;
+
+    public OtpGenerator(@Value("${app.otp.mode}") String mode,
+                        @Value("${app.otp.length}") int otpLength,
+                        @Value("${app.otp.ttlSeconds}") int otpTtlSeconds,
+                        @Value("${app.otp.stepSeconds}") int stepSeconds,
+                        @Value("${app.otp.hmacSecret:}") String hmacSecret) {
+        this.stateless = "hmac".equalsIgnoreCase(mode);
+        this.otpLength = otpLength;
+        this.modulus = (int) Math.pow(10, otpLength);
+        this.stepSeconds = stepSeconds;
+        // Enough past steps to cover the whole OTP lifetime; Redis expiry enforces the exact TTL
+        this.window = (otpTtlSeconds + stepSeconds - 1) / stepSeconds;
+        if (stateless) {
+            if (hmacSecret == null || hmacSecret.isBlank()) {
+                throw new IllegalStateException("app.otp.hmacSecret must be set when app.otp.mode=hmac");
+            }
+            try {
+                this.macPrototype = Mac.getInstance(HMAC_ALGORITHM);
+                this.macPrototype.init(new SecretKeySpec(hmacSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialise OTP HMAC", e);
+            }
+        } else {
+            this.macPrototype = null;
+        }
+    }
+
+    /**
+     * @return true if codes are derived rather than stored
+     */
+    public boolean isStateless() {
+        return stateless;
+    }
+
+    /**
+     * Create the code for a transaction
+     * @param txnId Transaction ID
+     * @param resendCount How many times the OTP has been resent (0 for the first code)
+     */
+    public String newCode(Long txnId, long resendCount) {
+        if (!stateless) {
+            StringBuilder sb = new StringBuilder(otpLength);
+            for (int i = 0; i < otpLength; i++) sb.append((char) ('0' + RANDOM.nextInt(10)));
+            return sb.toString();
+        }
+        return derive(txnId, resendCount, currentStep());
+    }
+
+    /**
+     * Check a submitted code in stateless mode against every step still inside the OTP lifetime
+     * @param txnId Transaction ID
+     * @param resendCount Resend counter the code must have been issued for
+     * @param submitted Code entered by the user
+     */
+    public boolean matches(Long txnId, long resendCount, String submitted) {
+        byte[] given = submitted.getBytes(StandardCharsets.US_ASCII);
+        long step = currentStep();
+        boolean match = false;
+        for (long s = step - window; s <= step; s++) {
+            // No early exit, so timing does not reveal which step matched
+            match |= MessageDigest.isEqual(derive(txnId, resendCount, s).getBytes(StandardCharsets.US_ASCII), given);
+        }
+        return match;
+    }
+
+    private long currentStep() {
+        return System.currentTimeMillis() / 1000L / stepSeconds;
+    }
+
+    // RFC 4226 dynamic truncation over HMAC(txnId:resendCount:step)
+    private String derive(Long txnId, long resendCount, long step) {
+        byte[] hash;
+        try {
+            Mac mac = (Mac) macPrototype.clone();
+            hash = mac.doFinal((txnId + ":" + resendCount + ":" + step).getBytes(StandardCharsets.US_ASCII));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HMAC implementation is not cloneable", e);
+        }
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24)
+                | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8)
+                | (hash[offset + 3] & 0xff);
+        return String.format("%0" + otpLength + "d", binary % modulus);
+    }
+}
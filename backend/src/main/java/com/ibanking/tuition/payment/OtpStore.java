@@ -0,0 +1,169 @@
+package com.ibanking.tuition.payment;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * OTP state of a payment transaction, kept in a single Redis hash {@code otp:{txnId}}
+ * (fields: code, attempts, resendCount, lastResendAt, burned). Every operation is one
+ * server-side script, so each endpoint touches Redis exactly once and check-then-act is atomic.
+ * In stateless mode ({@link OtpGenerator#isStateless()}) the code field is never written and
+ * the hash only carries counters.
+ */
+@Component
+public class OtpStore {
+
+    public static final int MAX_RESENDS = 3;
+    public static final int RESEND_COOLDOWN_SECONDS = 30;
+
+    public enum VerifyResult { VALID, INVALID, EXPIRED, TOO_MANY_ATTEMPTS }
+
+    public enum ResendStatus { SENT, LIMIT_REACHED, COOLDOWN }
+
+    /**
+     * @param status Outcome of the resend
+     * @param value New resend count when SENT, seconds to wait when COOLDOWN
+     * @param code New code when SENT, null otherwise
+     */
+    public record ResendResult(ResendStatus status, long value, String code) {}
+
+    /**
+     * Start a fresh OTP: code set (unless empty), counters reset, cooldown starts now (server clock).
+     * KEYS[1] = hash, ARGV[1] = code or '', ARGV[2] = ttl seconds
+     */
+    private static final DefaultRedisScript<Long> ISSUE_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('TIME') " +
+            "local now = t[1] * 1000 + math.floor(t[2] / 1000) " +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('HSET', KEYS[1], 'attempts', 0, 'resendCount', 0, 'lastResendAt', now) " +
+            "if ARGV[1] ~= '' then redis.call('HSET', KEYS[1], 'code', ARGV[1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * Count the attempt and compare the code.
+     * Returns {status, resendCount}: -1 expired, -2 too many attempts (code is burned),
+     * 0 wrong code, 1 valid, 2 no stored code (stateless mode, caller compares).
+     * KEYS[1] = hash, ARGV[1] = submitted code, ARGV[2] = max attempts
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> VERIFY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 or redis.call('HEXISTS', KEYS[1], 'burned') == 1 then " +
+            "  return {-1, 0} " +
+            "end " +
+            "local attempts = redis.call('HINCRBY', KEYS[1], 'attempts', 1) " +
+            "local resendCount = tonumber(redis.call('HGET', KEYS[1], 'resendCount') or '0') " +
+            "if attempts > tonumber(ARGV[2]) then " +
+            "  redis.call('HDEL', KEYS[1], 'code') " +
+            "  redis.call('HSET', KEYS[1], 'burned', 1) " +
+            "  return {-2, resendCount} " +
+            "end " +
+            "local code = redis.call('HGET', KEYS[1], 'code') " +
+            "if not code then return {2, resendCount} end " +
+            "if code ~= ARGV[1] then return {0, resendCount} end " +
+            "return {1, resendCount}",
+            List.class);
+
+    /**
+     * Check resend limit and cooldown, then bump the counter, reset attempts and swap the code.
+     * Returns {1, newCount} sent, {-1, 0} limit reached (hash removed), {-2, secondsLeft} cooldown.
+     * KEYS[1] = hash, ARGV[1] = ttl seconds, ARGV[2] = max resends, ARGV[3] = cooldown millis,
+     * ARGV[4] = new code or ''
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RESEND_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('TIME') " +
+            "local now = t[1] * 1000 + math.floor(t[2] / 1000) " +
+            "local count = tonumber(redis.call('HGET', KEYS[1], 'resendCount') or '0') " +
+            "if count >= tonumber(ARGV[2]) then " +
+            "  redis.call('DEL', KEYS[1]) " +
+            "  return {-1, 0} " +
+            "end " +
+            "local last = redis.call('HGET', KEYS[1], 'lastResendAt') " +
+            "if last then " +
+            "  local elapsed = now - tonumber(last) " +
+            "  if elapsed < tonumber(ARGV[3]) then " +
+            "    return {-2, math.ceil((tonumber(ARGV[3]) - elapsed) / 1000)} " +
+            "  end " +
+            "end " +
+            "count = count + 1 " +
+            "redis.call('HDEL', KEYS[1], 'code', 'burned') " +
+            "redis.call('HSET', KEYS[1], 'attempts', 0, 'resendCount', count, 'lastResendAt', now) " +
+            "if ARGV[4] ~= '' then redis.call('HSET', KEYS[1], 'code', ARGV[4]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return {1, count}",
+            List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final OtpGenerator otpGenerator;
+    private final int otpTtlSeconds;
+    private final int maxAttempts;
+
+    public OtpStore(StringRedisTemplate redisTemplate,
+                    OtpGenerator otpGenerator,
+                    @Value("${app.otp.ttlSeconds}") int otpTtlSeconds,
+                    @Value("${app.otp.maxAttempts}") int maxAttempts) {
+        this.redisTemplate = redisTemplate;
+        this.otpGenerator = otpGenerator;
+        this.otpTtlSeconds = otpTtlSeconds;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public static String key(Long txnId) { return "otp:" + txnId; }
+
+    /**
+     * Start OTP verification for a new transaction
+     * @return the code to send to the payer
+     */
+    public String issue(Long txnId) {
+        String code = otpGenerator.newCode(txnId, 0);
+        String stored = otpGenerator.isStateless() ? "" : code;
+        redisTemplate.execute(ISSUE_SCRIPT, List.of(key(txnId)), stored, String.valueOf(otpTtlSeconds));
+        return code;
+    }
+
+    public VerifyResult verify(Long txnId, String code) {
+        List<?> result = redisTemplate.execute(VERIFY_SCRIPT, List.of(key(txnId)), code, String.valueOf(maxAttempts));
+        long status = ((Number) result.get(0)).longValue();
+        long resendCount = ((Number) result.get(1)).longValue();
+        if (status == -1L) return VerifyResult.EXPIRED;
+        if (status == -2L) return VerifyResult.TOO_MANY_ATTEMPTS;
+        if (status == 2L) {
+            return otpGenerator.matches(txnId, resendCount, code) ? VerifyResult.VALID : VerifyResult.INVALID;
+        }
+        return status == 1L ? VerifyResult.VALID : VerifyResult.INVALID;
+    }
+
+    public ResendResult resend(Long txnId) {
+        // A random code can be made up front; a derived one depends on the new resend count
+        String randomCode = otpGenerator.isStateless() ? "" : otpGenerator.newCode(txnId, 0);
+        List<?> result = redisTemplate.execute(RESEND_SCRIPT, List.of(key(txnId)),
+                String.valueOf(otpTtlSeconds), String.valueOf(MAX_RESENDS),
+                String.valueOf(RESEND_COOLDOWN_SECONDS * 1000L), randomCode);
+        long status = ((Number) result.get(0)).longValue();
+        long value = ((Number) result.get(1)).longValue();
+        if (status == -1L) return new ResendResult(ResendStatus.LIMIT_REACHED, 0, null);
+        if (status == -2L) return new ResendResult(ResendStatus.COOLDOWN, value, null);
+
+        String code = otpGenerator.isStateless() ? otpGenerator.newCode(txnId, value) : randomCode;
+        return new ResendResult(ResendStatus.SENT, value, code);
+    }
+
+    public void clear(Long txnId) {
+        redisTemplate.delete(key(txnId));
+    }
+
+    /**
+     * Drop OTP state of many transactions with a single non-blocking UNLINK
+     */
+    public void clearAll(Collection<Long> txnIds) {
+        if (txnIds.isEmpty()) return;
+        redisTemplate.unlink(txnIds.stream().map(OtpStore::key).toList());
+    }
+}
@@ -13,10 +13,11 @@ public class PaymentCleanupService {
     }
 
     /**
-     * Clean up expired OTP transactions every 30 seconds
-     * This will mark PENDING_OTP transactions as FAILED when their OTP has expired
+     * Safety net for expired OTP transactions
+     * Expiry normally happens at each transaction's deadline in {@link OtpExpiryScheduler};
+     * this sweep only catches transactions that scheduler missed (e.g. created on a node that went down)
      */
-    @Scheduled(fixedRate = 30000) // Run every 30 seconds
+    @Scheduled(fixedRateString = "${app.otp.expirySweepMillis}")
     public void cleanupExpiredOtpTransactions() {
         try {
             System.out.println("Running scheduled cleanup for expired OTP transactions...");
@@ -2,29 +2,34 @@ package com.ibanking.tuition.payment;
 
 import com.ibanking.tuition.user.Customer;
 import com.ibanking.tuition.user.CustomerRepository;
-import com.ibanking.tuition.tuition.SemesterUtil;
+import com.ibanking.tuition.semester.SemesterCalendar;
 import com.ibanking.tuition.tuition.StudentTuition;
 import com.ibanking.tuition.tuition.StudentTuitionRepository;
 import com.ibanking.tuition.email.EmailService;
+import com.ibanking.tuition.tx.TransactionRetryExecutor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
  
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -35,247 +40,231 @@ public class PaymentController {
     private final StudentTuitionRepository studentTuitionRepository;
     private final PaymentTransactionRepository paymentTransactionRepository;
     private final PaymentService paymentService;
-    private final StringRedisTemplate redisTemplate;
+    private final OtpStore otpStore;
     
     private final PasswordEncoder passwordEncoder;
     private final EmailService emailService;
+    private final OtpExpiryScheduler otpExpiryScheduler;
+    private final PaymentStatusNotifier statusNotifier;
+    private final PaymentStatusStreams statusStreams;
+    private final SemesterCalendar semesterCalendar;
+
+    private final ObjectMapper objectMapper;
 
     private final int otpTtlSeconds;
-    private final int otpLength;
-    private final int maxAttempts;
+
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
 
     public PaymentController(CustomerRepository customerRepository, 
                            StudentTuitionRepository studentTuitionRepository, 
                            PaymentTransactionRepository paymentTransactionRepository,
                            PaymentService paymentService,
-                           StringRedisTemplate redisTemplate, 
+                           OtpStore otpStore, 
                            PasswordEncoder passwordEncoder,
                            EmailService emailService,
-                           @org.springframework.beans.factory.annotation.Value("${app.otp.ttlSeconds}") int otpTtlSeconds, 
-                           @org.springframework.beans.factory.annotation.Value("${app.otp.length}") int otpLength, 
-                           @org.springframework.beans.factory.annotation.Value("${app.otp.maxAttempts}") int maxAttempts) {
+                           OtpExpiryScheduler otpExpiryScheduler,
+                           PaymentStatusNotifier statusNotifier,
+                           PaymentStatusStreams statusStreams,
+                           SemesterCalendar semesterCalendar,
+                           ObjectMapper objectMapper,
+                           @org.springframework.beans.factory.annotation.Value("${app.otp.ttlSeconds}") int otpTtlSeconds) {
         this.customerRepository = customerRepository;
         this.studentTuitionRepository = studentTuitionRepository;
         this.paymentTransactionRepository = paymentTransactionRepository;
         this.paymentService = paymentService;
-        this.redisTemplate = redisTemplate;
+        this.otpStore = otpStore;
         this.passwordEncoder = passwordEncoder;
         this.emailService = emailService;
+        this.otpExpiryScheduler = otpExpiryScheduler;
+        this.statusNotifier = statusNotifier;
+        this.statusStreams = statusStreams;
+        this.semesterCalendar = semesterCalendar;
+        this.objectMapper = objectMapper;
         this.otpTtlSeconds = otpTtlSeconds;
-        this.otpLength = otpLength;
-        this.maxAttempts = maxAttempts;
     }
 
     @PostMapping("/initiate")
-    @Transactional(isolation = Isolation.SERIALIZABLE, rollbackFor = Exception.class)
     public ResponseEntity<?> initiate(Authentication auth, @Valid @RequestBody InitiateRequest req) {
         Customer payer = customerRepository.findByUsername(auth.getName()).orElseThrow();
-        String currentSemester = SemesterUtil.currentSemester();
+        String currentSemester = semesterCalendar.current();
         String normalized = req.studentId().trim().toUpperCase();
+
+        // Lock payer and tuition together (all-or-nothing), queueing behind the current holder
+        // for up to app.lock.maxWaitMillis without holding a database connection while waiting
+        List<String> lockKeys = List.of(
+            lockKey("payer", String.valueOf(payer.getId())),
+            lockKey("tuition", normalized + ":" + currentSemester)
+        );
+        Optional<ResponseEntity<?>> response;
+        try {
+            // SERIALIZABLE keeps the pending-transaction checks and the insert atomic;
+            // serialization failures are re-run transparently in a fresh transaction
+            response = paymentService.executeWithLocks(lockKeys, "payment.initiate", Isolation.SERIALIZABLE,
+                    () -> initiateInTransaction(payer, normalized, currentSemester));
+        } catch (RuntimeException e) {
+            if (TransactionRetryExecutor.isRetryable(e)) {
+                return ResponseEntity.status(409).body(Map.of("message", "Transaction conflict detected, please retry"));
+            }
+            throw e;
+        }
+        return response.orElseGet(() -> ResponseEntity.status(423).body(Map.of("message", "Resource busy, please try again later")));
+    }
+
+    private ResponseEntity<?> initiateInTransaction(Customer payer, String normalized, String currentSemester) {
+        // CRITICAL: Check if payer already has a pending transaction (PENDING_OTP or PROCESSING)
+        // A payer can only have ONE pending transaction at a time, regardless of which student
+        // This prevents confusion and ensures OTP is sent for the correct transaction
+        List<PaymentTransaction.Status> pendingStatuses = List.of(
+            PaymentTransaction.Status.PENDING_OTP,
+            PaymentTransaction.Status.PROCESSING
+        );
+        List<PaymentTransaction> payerPendingTransactions = paymentTransactionRepository
+            .findByPayerCustomerIdAndStatusIn(payer.getId(), pendingStatuses);
         
-        // Use PaymentService for better concurrency control
-        String payerLockKey = lockKey("payer", String.valueOf(payer.getId()));
-        String tuitionLockKey = lockKey("tuition", normalized + ":" + currentSemester);
+        if (!payerPendingTransactions.isEmpty()) {
+            PaymentTransaction existingTxn = payerPendingTransactions.get(0);
+            return ResponseEntity.status(409).body(Map.of(
+                "message", 
+                "You already have a pending payment transaction (ID: " + existingTxn.getId() + 
+                "). Please complete or cancel it before creating a new transaction."
+            ));
+        }
         
-        boolean payerLocked = paymentService.tryAcquireLockWithRetry(payerLockKey, 3);
-        boolean tuitionLocked = paymentService.tryAcquireLockWithRetry(tuitionLockKey, 3);
+        // Check if tuition is still available
+        if (!paymentService.isTuitionAvailable(normalized, currentSemester)) {
+            return ResponseEntity.status(404).body(Map.of("message", "No unpaid tuition for current semester"));
+        }
         
-        if (!(payerLocked && tuitionLocked)) {
-            if (payerLocked) paymentService.releaseLock(payerLockKey);
-            if (tuitionLocked) paymentService.releaseLock(tuitionLockKey);
-            return ResponseEntity.status(423).body(Map.of("message", "Resource busy, please try again later"));
+        // Check if customer has sufficient balance
+        StudentTuition t = studentTuitionRepository.findByStudentIdAndSemesterAndPaidIsFalse(normalized, currentSemester)
+                .orElse(null);
+        if (t == null) {
+            return ResponseEntity.status(404).body(Map.of("message", "No unpaid tuition for current semester"));
         }
         
-        try {
-            // CRITICAL: Check if payer already has a pending transaction (PENDING_OTP or PROCESSING)
-            // A payer can only have ONE pending transaction at a time, regardless of which student
-            // This prevents confusion and ensures OTP is sent for the correct transaction
-            List<PaymentTransaction.Status> pendingStatuses = List.of(
-                PaymentTransaction.Status.PENDING_OTP,
-                PaymentTransaction.Status.PROCESSING
-            );
-            List<PaymentTransaction> payerPendingTransactions = paymentTransactionRepository
-                .findByPayerCustomerIdAndStatusIn(payer.getId(), pendingStatuses);
-            
-            if (!payerPendingTransactions.isEmpty()) {
-                PaymentTransaction existingTxn = payerPendingTransactions.get(0);
-                return ResponseEntity.status(409).body(Map.of(
-                    "message", 
-                    "You already have a pending payment transaction (ID: " + existingTxn.getId() + 
-                    "). Please complete or cancel it before creating a new transaction."
-                ));
-            }
-            
-            // Check if tuition is still available
-            if (!paymentService.isTuitionAvailable(normalized, currentSemester)) {
-                return ResponseEntity.status(404).body(Map.of("message", "No unpaid tuition for current semester"));
-            }
-            
-            // Check if customer has sufficient balance
-            StudentTuition t = studentTuitionRepository.findByStudentIdAndSemesterAndPaidIsFalse(normalized, currentSemester)
-                    .orElse(null);
-            if (t == null) {
-                return ResponseEntity.status(404).body(Map.of("message", "No unpaid tuition for current semester"));
-            }
-            
-            if (!paymentService.hasSufficientBalance(payer.getId(), t.getAmount())) {
-                return ResponseEntity.status(400).body(Map.of("message", "Insufficient balance"));
-            }
-            
-            // CRITICAL: Double-check if there's already a pending transaction for this tuition
-            // This check MUST be done right before save to prevent race conditions
-            // Using SERIALIZABLE isolation ensures this check and save are atomic
-            // Note: We already checked payer-level pending transactions above, but also check student-level
-            List<PaymentTransaction> existingPending = paymentTransactionRepository
-                .findByStudentIdAndSemesterAndStatusIn(normalized, currentSemester, pendingStatuses);
-            
-            if (!existingPending.isEmpty()) {
-                return ResponseEntity.status(409).body(Map.of(
-                    "message", 
-                    "There is already a pending payment transaction for this student. Please wait for it to complete or expire."
-                ));
-            }
-            
-            // All checks passed, now we'll create the transaction
-            // Register synchronization callback BEFORE creating transaction to ensure locks are released after commit
-            final boolean[] locksReleased = {false};
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    paymentService.releaseLock(payerLockKey);
-                    paymentService.releaseLock(tuitionLockKey);
-                    locksReleased[0] = true;
-                }
-                
-                @Override
-                public void afterCompletion(int status) {
-                    // If transaction rolled back, also release locks (afterCommit already handled commit case)
-                    if (!locksReleased[0] && status == TransactionSynchronization.STATUS_ROLLED_BACK) {
-                        paymentService.releaseLock(payerLockKey);
-                        paymentService.releaseLock(tuitionLockKey);
-                        locksReleased[0] = true;
-                    }
-                }
-            });
-
-            // Create transaction - this will be committed atomically with the check above
-            PaymentTransaction txn = new PaymentTransaction();
-            txn.setPayerCustomerId(payer.getId());
-            txn.setStudentId(t.getStudentId());
-            txn.setSemester(t.getSemester());
-            txn.setAmount(t.getAmount());
-            txn.setStatus(PaymentTransaction.Status.PENDING_OTP);
-            txn.setCreatedAt(OffsetDateTime.now());
-            txn.setLockId(UUID.randomUUID().toString());
-            txn.setLockExpiry(OffsetDateTime.now().plusSeconds(30));
-            txn = paymentTransactionRepository.save(txn);
-            
-            // Flush immediately to ensure transaction is visible in current transaction
-            // This prevents other transactions from passing the check above
-            paymentTransactionRepository.flush();
-
-            String otp = generateOtp(otpLength);
-            String otpKey = otpKey(txn.getId());
-            String attemptKey = attemptKey(txn.getId());
-            String resendCountKey = resendCountKey(txn.getId());
-            String lastResendKey = lastResendKey(txn.getId());
-            redisTemplate.opsForValue().set(otpKey, otp, Duration.ofSeconds(otpTtlSeconds));
-            redisTemplate.opsForValue().setIfAbsent(attemptKey, "0", Duration.ofSeconds(otpTtlSeconds));
-            // initialize resend counters
-            redisTemplate.opsForValue().setIfAbsent(resendCountKey, "0", Duration.ofSeconds(otpTtlSeconds));
-            redisTemplate.opsForValue().set(lastResendKey, String.valueOf(System.currentTimeMillis()), Duration.ofSeconds(otpTtlSeconds));
-
-            // Send OTP email
-            emailService.sendOtpEmail(payer, otp, txn, t);
-
-            return ResponseEntity.ok(Map.of("transactionId", txn.getId(), "ttlSeconds", otpTtlSeconds));
-            
-        } catch (Exception e) {
-            // If any error occurs, release locks immediately
-            paymentService.releaseLock(payerLockKey);
-            paymentService.releaseLock(tuitionLockKey);
-            throw e;
+        if (!paymentService.hasSufficientBalance(payer.getId(), t.getAmount())) {
+            return ResponseEntity.status(400).body(Map.of("message", "Insufficient balance"));
         }
+        
+        // CRITICAL: Double-check if there's already a pending transaction for this tuition
+        // This check MUST be done right before save to prevent race conditions
+        // Using SERIALIZABLE isolation ensures this check and save are atomic
+        // Note: We already checked payer-level pending transactions above, but also check student-level
+        List<PaymentTransaction> existingPending = paymentTransactionRepository
+            .findByStudentIdAndSemesterAndStatusIn(normalized, currentSemester, pendingStatuses);
+        
+        if (!existingPending.isEmpty()) {
+            return ResponseEntity.status(409).body(Map.of(
+                "message", 
+                "There is already a pending payment transaction for this student. Please wait for it to complete or expire."
+            ));
+        }
+        
+        // Create transaction - this will be committed atomically with the check above
+        PaymentTransaction txn = new PaymentTransaction();
+        txn.setPayerCustomerId(payer.getId());
+        txn.setStudentId(t.getStudentId());
+        txn.setSemester(t.getSemester());
+        txn.setAmount(t.getAmount());
+        txn.setStatus(PaymentTransaction.Status.PENDING_OTP);
+        txn.setCreatedAt(OffsetDateTime.now());
+        txn.setLockId(UUID.randomUUID().toString());
+        txn.setLockExpiry(OffsetDateTime.now().plusSeconds(30));
+        txn = paymentTransactionRepository.save(txn);
+        
+        // Flush immediately to ensure transaction is visible in current transaction
+        // This prevents other transactions from passing the check above
+        paymentTransactionRepository.flush();
+
+        // Code, attempt counter and resend counters in one hash, written in one round trip
+        String otp = otpStore.issue(txn.getId());
+
+        // Queue the OTP email in the outbox within this transaction; it is delivered after
+        // commit, so a retried or rolled-back attempt never mails an OTP
+        emailService.queueOtpEmail(payer, otp, txn, t);
+
+        // Expire exactly at the OTP deadline once the transaction is visible to other requests
+        Long createdId = txn.getId();
+        OffsetDateTime createdAt = txn.getCreatedAt();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                otpExpiryScheduler.schedule(createdId, createdAt);
+            }
+        });
+
+        return ResponseEntity.ok(Map.of("transactionId", txn.getId(), "ttlSeconds", otpTtlSeconds));
     }
 
     @PostMapping("/confirm")
-    @Transactional
     public ResponseEntity<?> confirm(Authentication auth, @Valid @RequestBody ConfirmRequest req) {
         PaymentTransaction txn = paymentTransactionRepository.findById(req.transactionId()).orElse(null);
         if (txn == null || txn.getStatus() != PaymentTransaction.Status.PENDING_OTP) {
             return ResponseEntity.status(400).body(Map.of("message", "Invalid transaction"));
         }
         
-        String otpKey = otpKey(txn.getId());
-        String attemptKey = attemptKey(txn.getId());
-        String expected = redisTemplate.opsForValue().get(otpKey);
-        if (expected == null) {
+        // Attempt counting and code comparison happen atomically in one script
+        OtpStore.VerifyResult verification = otpStore.verify(txn.getId(), req.otp());
+        if (verification == OtpStore.VerifyResult.EXPIRED) {
             // Mark transaction as failed if OTP is not found
             txn.setStatus(PaymentTransaction.Status.FAILED);
             txn.setCompletedAt(OffsetDateTime.now());
             paymentTransactionRepository.save(txn);
+            statusNotifier.statusChanged(txn.getId(), PaymentTransaction.Status.FAILED);
             return ResponseEntity.status(400).body(Map.of("message", "OTP expired. Transaction failed."));
         }
-
-        Long attempts = redisTemplate.opsForValue().increment(attemptKey);
-        if (attempts != null && attempts > maxAttempts) {
-            redisTemplate.delete(otpKey);
+        if (verification == OtpStore.VerifyResult.TOO_MANY_ATTEMPTS) {
             return ResponseEntity.status(429).body(Map.of("message", "Too many attempts"));
         }
-
-        if (!expected.equals(req.otp())) {
+        if (verification == OtpStore.VerifyResult.INVALID) {
             return ResponseEntity.status(401).body(Map.of("message", "Invalid OTP"));
         }
 
         // CRITICAL: Re-acquire locks before processing payment to prevent concurrent processing
-        String payerLockKey = lockKey("payer", String.valueOf(txn.getPayerCustomerId()));
-        String tuitionLockKey = lockKey("tuition", txn.getStudentId() + ":" + txn.getSemester());
-        
-        boolean payerLocked = paymentService.tryAcquireLockWithRetry(payerLockKey, 3);
-        boolean tuitionLocked = paymentService.tryAcquireLockWithRetry(tuitionLockKey, 3);
-        
-        if (!(payerLocked && tuitionLocked)) {
-            if (payerLocked) paymentService.releaseLock(payerLockKey);
-            if (tuitionLocked) paymentService.releaseLock(tuitionLockKey);
-            return ResponseEntity.status(423).body(Map.of("message", "Resource busy, please try again later"));
-        }
-
-        // Use PaymentService for processing with proper concurrency control
+        List<String> lockKeys = List.of(
+            lockKey("payer", String.valueOf(txn.getPayerCustomerId())),
+            lockKey("tuition", txn.getStudentId() + ":" + txn.getSemester())
+        );
+        Long txnId = txn.getId();
+        Optional<Boolean> outcome;
         try {
-            boolean success = paymentService.processPayment(txn.getId());
-            if (success) {
-                // Send confirmation email
-                Customer payer = customerRepository.findById(txn.getPayerCustomerId()).orElseThrow();
-                StudentTuition tuition = studentTuitionRepository.findByStudentIdAndSemester(txn.getStudentId(), txn.getSemester()).orElseThrow();
-                sendConfirmationEmail(payer, txn, tuition);
-                
-                redisTemplate.delete(otpKey);
-                redisTemplate.delete(attemptKey);
-                
-                // Return detailed transaction information for success popup
-                return ResponseEntity.ok(Map.of(
-                    "message", "Payment successful",
-                    "transactionId", txn.getId(),
-                    "studentId", txn.getStudentId(),
-                    "semester", txn.getSemester(),
-                    "amount", txn.getAmount(),
-                    "studentName", tuition.getStudentName(),
-                    "payerName", payer.getFullName(),
-                    "completedAt", txn.getCompletedAt() != null ? txn.getCompletedAt().toString() : OffsetDateTime.now().toString()
-                ));
-            } else {
-                return ResponseEntity.status(500).body(Map.of("message", "Payment processing failed"));
-            }
+            outcome = paymentService.executeWithLocks(lockKeys, "payment.confirm", Isolation.READ_COMMITTED,
+                    () -> paymentService.processPayment(txnId));
+        } catch (PaymentService.InsufficientBalanceException e) {
+            // The attempt rolled back whole, tuition mark included; record the failure on its own
+            paymentService.failPayment(txnId);
+            outcome = Optional.of(false);
         } catch (RuntimeException e) {
-            if (e.getMessage().contains("Concurrent modification")) {
+            if (TransactionRetryExecutor.isRetryable(e)) {
                 return ResponseEntity.status(409).body(Map.of("message", "Transaction conflict detected, please retry"));
             }
             return ResponseEntity.status(500).body(Map.of("message", "Payment processing failed: " + e.getMessage()));
-        } finally {
-            // Always release locks after processing
-            paymentService.releaseLock(payerLockKey);
-            paymentService.releaseLock(tuitionLockKey);
         }
+
+        if (outcome.isEmpty()) {
+            return ResponseEntity.status(423).body(Map.of("message", "Resource busy, please try again later"));
+        }
+        if (!outcome.get()) {
+            return ResponseEntity.status(500).body(Map.of("message", "Payment processing failed"));
+        }
+
+        // Confirmation email was queued in the outbox by processPayment
+        Customer payer = customerRepository.findById(txn.getPayerCustomerId()).orElseThrow();
+        StudentTuition tuition = studentTuitionRepository.findByStudentIdAndSemester(txn.getStudentId(), txn.getSemester()).orElseThrow();
+        
+        otpStore.clear(txn.getId());
+        
+        // Return detailed transaction information for success popup
+        return ResponseEntity.ok(Map.of(
+            "message", "Payment successful",
+            "transactionId", txn.getId(),
+            "studentId", txn.getStudentId(),
+            "semester", txn.getSemester(),
+            "amount", txn.getAmount(),
+            "studentName", tuition.getStudentName(),
+            "payerName", payer.getFullName(),
+            "completedAt", txn.getCompletedAt() != null ? txn.getCompletedAt().toString() : OffsetDateTime.now().toString()
+        ));
     }
 
     @PostMapping("/resend-otp")
@@ -290,98 +279,120 @@ public class PaymentController {
             return ResponseEntity.status(403).body(Map.of("message", "Unauthorized"));
         }
 
-        // Enforce resend limits: max 3 resends, at least 30s between resends
-        String resendCountKey = resendCountKey(txn.getId());
-        String lastResendKey = lastResendKey(txn.getId());
-
-        String countStr = redisTemplate.opsForValue().get(resendCountKey);
-        long resendCount = 0L;
-        if (countStr != null) {
-            try { resendCount = Long.parseLong(countStr); } catch (NumberFormatException ignored) {}
-        }
-        if (resendCount >= 3) {
+        // Enforce resend limits (max 3 resends, at least 30s between resends) and swap in
+        // the new code in a single atomic script
+        OtpStore.ResendResult resend = otpStore.resend(txn.getId());
+        if (resend.status() == OtpStore.ResendStatus.LIMIT_REACHED) {
             // Fail transaction immediately
             txn.setStatus(PaymentTransaction.Status.FAILED);
             txn.setCompletedAt(OffsetDateTime.now());
             paymentTransactionRepository.save(txn);
-
-            String otpKeyToDel = otpKey(txn.getId());
-            String attemptKeyToDel = attemptKey(txn.getId());
-            redisTemplate.delete(otpKeyToDel);
-            redisTemplate.delete(attemptKeyToDel);
-            redisTemplate.delete(resendCountKey);
-            redisTemplate.delete(lastResendKey);
+            statusNotifier.statusChanged(txn.getId(), PaymentTransaction.Status.FAILED);
 
             return ResponseEntity.status(429).body(Map.of("message", "Exceeded maximum OTP resends. Transaction failed."));
         }
-
-        String lastTsStr = redisTemplate.opsForValue().get(lastResendKey);
-        long nowMs = System.currentTimeMillis();
-        if (lastTsStr != null) {
-            try {
-                long lastMs = Long.parseLong(lastTsStr);
-                long diffSec = (nowMs - lastMs) / 1000L;
-                if (diffSec < 30) {
-                    return ResponseEntity.status(429).body(Map.of(
-                            "message", "Please wait before resending OTP",
-                            "retryAfterSeconds", 30 - diffSec
-                    ));
-                }
-            } catch (NumberFormatException ignored) {}
+        if (resend.status() == OtpStore.ResendStatus.COOLDOWN) {
+            return ResponseEntity.status(429).body(Map.of(
+                    "message", "Please wait before resending OTP",
+                    "retryAfterSeconds", resend.value()
+            ));
         }
-
-        // Generate new OTP
-        String otp = generateOtp(otpLength);
-        String otpKey = otpKey(txn.getId());
-        String attemptKey = attemptKey(txn.getId());
-        
-        // Reset OTP and attempts (do not reset resend counters)
-        redisTemplate.delete(otpKey);
-        redisTemplate.delete(attemptKey);
-        redisTemplate.opsForValue().set(otpKey, otp, Duration.ofSeconds(otpTtlSeconds));
-        redisTemplate.opsForValue().setIfAbsent(attemptKey, "0", Duration.ofSeconds(otpTtlSeconds));
-
-        // Increment resend count and update last resend timestamp; align TTL to OTP TTL
-        Long newCount = redisTemplate.opsForValue().increment(resendCountKey);
-        if (newCount == null) newCount = 1L;
-        redisTemplate.expire(resendCountKey, Duration.ofSeconds(otpTtlSeconds));
-        redisTemplate.opsForValue().set(lastResendKey, String.valueOf(nowMs), Duration.ofSeconds(otpTtlSeconds));
+        long newCount = resend.value();
+        String otp = resend.code();
         
         // Reset transaction status to PENDING_OTP if it was EXPIRED
         if (txn.getStatus() == PaymentTransaction.Status.EXPIRED) {
             txn.setStatus(PaymentTransaction.Status.PENDING_OTP);
             paymentTransactionRepository.save(txn);
+            statusNotifier.statusChanged(txn.getId(), PaymentTransaction.Status.PENDING_OTP);
         }
 
-        // Send new OTP email
-        emailService.sendOtpEmail(payer, otp, txn, studentTuitionRepository.findByStudentIdAndSemester(txn.getStudentId(), txn.getSemester()).orElseThrow());
+        // Queue new OTP email
+        emailService.queueOtpEmail(payer, otp, txn, studentTuitionRepository.findByStudentIdAndSemester(txn.getStudentId(), txn.getSemester()).orElseThrow());
 
         return ResponseEntity.ok(Map.of(
                 "message", "New OTP sent",
                 "ttlSeconds", otpTtlSeconds,
                 "resendCount", newCount,
-                "resendRemaining", Math.max(0, 3 - newCount)
+                "resendRemaining", Math.max(0, OtpStore.MAX_RESENDS - newCount)
         ));
     }
 
+    /**
+     * One page of the caller's history, newest first, written to the response as it is serialized.
+     * The body stays a JSON array; when more rows exist, the cursor for the next page is returned
+     * in the X-Next-Cursor header and passed back as {@code ?cursor=}.
+     */
     @GetMapping("/history")
-    public ResponseEntity<?> history(Authentication auth) {
-        // Clean up expired transactions before returning history
-        paymentService.processExpiredOtpTransactions();
-        
+    public ResponseEntity<?> history(Authentication auth,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
         Customer payer = customerRepository.findByUsername(auth.getName()).orElseThrow();
-        var list = paymentTransactionRepository.findByPayerCustomerIdOrderByCreatedAtDesc(payer.getId());
-        return ResponseEntity.ok(list.stream().map(txn -> {
-            java.util.Map<String, Object> m = new java.util.LinkedHashMap<>();
-            m.put("id", txn.getId());
-            m.put("studentId", txn.getStudentId());
-            m.put("semester", txn.getSemester());
-            m.put("amount", txn.getAmount());
-            m.put("status", txn.getStatus() != null ? txn.getStatus().name() : null);
-            m.put("createdAt", txn.getCreatedAt());
-            m.put("completedAt", txn.getCompletedAt());
-            return m;
-        }).toList());
+
+        // Fetch one extra row to learn whether another page exists
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<PaymentHistoryRow> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = paymentTransactionRepository.findHistoryPage(payer.getId(), page);
+        } else {
+            String[] position;
+            try {
+                position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                rows = paymentTransactionRepository.findHistoryPageAfter(payer.getId(),
+                        OffsetDateTime.parse(position[0]), Long.valueOf(position[1]), page);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException | java.time.format.DateTimeParseException e) {
+                return ResponseEntity.status(400).body(Map.of("message", "Invalid cursor"));
+            }
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<PaymentHistoryRow> pageRows = hasMore ? rows.subList(0, pageSize) : rows;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (hasMore) {
+            PaymentHistoryRow last = pageRows.get(pageRows.size() - 1);
+            String next = last.createdAt() + "|" + last.id();
+            response.header("X-Next-Cursor",
+                    Base64.getUrlEncoder().withoutPadding().encodeToString(next.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // Pure read: overdue PENDING_OTP rows are reported as FAILED here and persisted by the expirer
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartArray();
+                for (PaymentHistoryRow row : pageRows) {
+                    java.util.Map<String, Object> m = new java.util.LinkedHashMap<>();
+                    m.put("id", row.id());
+                    m.put("studentId", row.studentId());
+                    m.put("semester", row.semester());
+                    m.put("amount", row.amount());
+                    m.put("status", row.status() != null ? paymentService.effectiveStatus(row.status(), row.createdAt()).name() : null);
+                    m.put("createdAt", row.createdAt());
+                    m.put("completedAt", row.completedAt());
+                    json.writeObject(m);
+                }
+                json.writeEndArray();
+            }
+        };
+        return response.body(body);
+    }
+
+    /**
+     * Server-Sent Events stream of status changes for one of the caller's transactions.
+     * Sends the current status and remaining OTP seconds first, then every transition,
+     * and closes once the transaction succeeds or fails.
+     */
+    @GetMapping("/{id}/events")
+    public ResponseEntity<?> events(Authentication auth, @PathVariable("id") Long id) {
+        PaymentTransaction txn = paymentTransactionRepository.findById(id).orElse(null);
+        if (txn == null) {
+            return ResponseEntity.status(404).body(Map.of("message", "Transaction not found"));
+        }
+        Customer payer = customerRepository.findByUsername(auth.getName()).orElseThrow();
+        if (!txn.getPayerCustomerId().equals(payer.getId())) {
+            return ResponseEntity.status(403).body(Map.of("message", "Unauthorized"));
+        }
+        return ResponseEntity.ok(statusStreams.open(txn, paymentService.effectiveStatus(txn)));
     }
 
     @PostMapping("/cleanup-expired")
@@ -423,29 +434,7 @@ public class PaymentController {
         }
     }
 
-    // Helper methods for email sending
-
-    private void sendConfirmationEmail(Customer payer, PaymentTransaction txn, StudentTuition tuition) {
-        try {
-            emailService.sendPaymentConfirmationEmail(payer, txn, tuition);
-        } catch (Exception e) {
-            System.err.println("Failed to send confirmation email: " + e.getMessage());
-        }
-    }
-
-
-    private String generateOtp(int len) {
-        String digits = "0123456789";
-        Random r = new Random();
-        StringBuilder sb = new StringBuilder(len);
-        for (int i = 0; i < len; i++) sb.append(digits.charAt(r.nextInt(digits.length())));
-        return sb.toString();
-    }
 
-    private String otpKey(Long txnId) { return "otp:txn:" + txnId; }
-    private String attemptKey(Long txnId) { return "otp:attempt:" + txnId; }
-    private String resendCountKey(Long txnId) { return "otp:resendCount:" + txnId; }
-    private String lastResendKey(Long txnId) { return "otp:lastResendAt:" + txnId; }
     private String lockKey(String type, String id) { return "lock:" + type + ":" + id; }
 
     private static String generatePhone(int idx) {
@@ -0,0 +1,18 @@
+package com.ibanking.tuition.payment;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * Read-only view of a transaction for the history list, selected directly by JPQL
+ * so listing history never hydrates or tracks entities
+ */
+public record PaymentHistoryRow(
+        Long id,
+        String studentId,
+        String semester,
+        BigDecimal amount,
+        PaymentTransaction.Status status,
+        OffsetDateTime createdAt,
+        OffsetDateTime completedAt
+) {}
@@ -1,21 +1,29 @@
 package com.ibanking.tuition.payment;
 
+import com.ibanking.tuition.email.EmailService;
+import com.ibanking.tuition.lock.LockProvider;
+import com.ibanking.tuition.lock.LockWaitQueue;
 import com.ibanking.tuition.user.Customer;
 import com.ibanking.tuition.user.CustomerRepository;
 import com.ibanking.tuition.tuition.StudentTuition;
 import com.ibanking.tuition.tuition.StudentTuitionRepository;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.ibanking.tuition.tuition.TuitionIndex;
+import com.ibanking.tuition.tx.TransactionRetryExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.annotation.Isolation;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 @Service
 public class PaymentService {
@@ -23,136 +31,220 @@ public class PaymentService {
     private final CustomerRepository customerRepository;
     private final StudentTuitionRepository studentTuitionRepository;
     private final PaymentTransactionRepository paymentTransactionRepository;
-    private final StringRedisTemplate redisTemplate;
+    private final OtpStore otpStore;
+    private final LockProvider lockProvider;
+    private final LockWaitQueue lockWaitQueue;
+    private final EmailService emailService;
+    private final PaymentStatusNotifier statusNotifier;
+    private final TuitionIndex tuitionIndex;
+    private final Duration lockMaxWait;
     private final int otpTtlSeconds;
+    private final int expiryChunkSize;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionRetryExecutor transactionRetryExecutor;
 
     private static final int LOCK_TIMEOUT_SECONDS = 30;
-    private static final long LOCK_WAIT_MILLIS = 100;
+
+    /**
+     * Thrown by {@link #processPayment} when the payer's balance no longer covers the amount, so
+     * that everything the payment wrote is rolled back; record the outcome with {@link #failPayment}
+     */
+    public static class InsufficientBalanceException extends IllegalStateException {
+        InsufficientBalanceException(Long transactionId) {
+            super("Insufficient balance for transaction " + transactionId);
+        }
+    }
 
     public PaymentService(CustomerRepository customerRepository,
                          StudentTuitionRepository studentTuitionRepository,
                          PaymentTransactionRepository paymentTransactionRepository,
-                         StringRedisTemplate redisTemplate,
-                         @org.springframework.beans.factory.annotation.Value("${app.otp.ttlSeconds}") int otpTtlSeconds) {
+                         OtpStore otpStore,
+                         LockProvider lockProvider,
+                         LockWaitQueue lockWaitQueue,
+                         EmailService emailService,
+                         PaymentStatusNotifier statusNotifier,
+                         TuitionIndex tuitionIndex,
+                         PlatformTransactionManager transactionManager,
+                         TransactionRetryExecutor transactionRetryExecutor,
+                         @org.springframework.beans.factory.annotation.Value("${app.lock.maxWaitMillis}") long lockMaxWaitMillis,
+                         @org.springframework.beans.factory.annotation.Value("${app.otp.ttlSeconds}") int otpTtlSeconds,
+                         @org.springframework.beans.factory.annotation.Value("${app.otp.expiryChunkSize}") int expiryChunkSize) {
         this.customerRepository = customerRepository;
         this.studentTuitionRepository = studentTuitionRepository;
         this.paymentTransactionRepository = paymentTransactionRepository;
-        this.redisTemplate = redisTemplate;
+        this.otpStore = otpStore;
+        this.lockProvider = lockProvider;
+        this.lockWaitQueue = lockWaitQueue;
+        this.emailService = emailService;
+        this.statusNotifier = statusNotifier;
+        this.tuitionIndex = tuitionIndex;
+        this.lockMaxWait = Duration.ofMillis(lockMaxWaitMillis);
         this.otpTtlSeconds = otpTtlSeconds;
+        this.expiryChunkSize = expiryChunkSize;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionRetryExecutor = transactionRetryExecutor;
     }
 
     /**
-     * Acquire distributed lock for a resource
-     * @param lockKey The key to lock
-     * @param timeoutSeconds Lock timeout in seconds
-     * @return true if lock acquired, false otherwise
+     * Release locks previously acquired with {@link #acquireLocksOrWait}.
+     * Keys no longer owned by the token are left untouched, so releasing twice is harmless.
+     * @param lockKeys The keys to unlock
+     * @param token Owner token returned on acquisition
      */
-    public boolean acquireLock(String lockKey, int timeoutSeconds) {
-        String lockValue = UUID.randomUUID().toString();
-        Boolean acquired = redisTemplate.opsForValue()
-                .setIfAbsent(lockKey, lockValue, Duration.ofSeconds(timeoutSeconds));
-        return Boolean.TRUE.equals(acquired);
+    public void releaseLocks(List<String> lockKeys, String token) {
+        if (token == null) return;
+        List<String> keys = orderedKeys(lockKeys);
+        lockProvider.release(keys, token);
+
+        if (lockProvider.releasesOnTransactionEnd() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            // The lock is only really free once this transaction finishes
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    lockWaitQueue.signal(keys);
+                }
+            });
+        } else {
+            lockWaitQueue.signal(keys);
+        }
     }
 
     /**
-     * Release distributed lock
-     * @param lockKey The key to unlock
+     * Acquire a set of locks, waiting in a fair per-key queue if they are contended.
+     * Uncontended acquisition costs exactly one round trip; contenders are woken as soon as
+     * the holder releases instead of sleeping and polling.
+     * @param lockKeys The keys to lock
+     * @return owner token if all locks acquired, null if still busy after the wait deadline
      */
-    public void releaseLock(String lockKey) {
-        redisTemplate.delete(lockKey);
+    public String acquireLocksOrWait(List<String> lockKeys) {
+        List<String> keys = orderedKeys(lockKeys);
+        Duration ttl = Duration.ofSeconds(LOCK_TIMEOUT_SECONDS);
+        String token = lockProvider.tryAcquire(keys, ttl);
+        if (token != null) {
+            return token;
+        }
+        return lockWaitQueue.await(keys, lockMaxWait, () -> lockProvider.tryAcquire(keys, ttl));
     }
 
     /**
-     * Try to acquire lock with retry mechanism
-     * @param lockKey The key to lock
-     * @param maxRetries Maximum number of retry attempts
-     * @return true if lock acquired, false otherwise
+     * Run a unit of work in its own retried transaction while holding a set of locks.
+     * Waiting for contended locks never happens inside a database transaction, so queued
+     * requests do not each pin a pooled connection. With locks held in Redis or in memory they
+     * are acquired before the transaction opens and released after it ends. Transaction-scoped
+     * locks (Postgres advisory) must be taken inside the transaction that uses them, so each
+     * attempt is a transaction of its own: a failed try ends it at once, dropping any keys it
+     * did get, and the caller waits for a release with no transaction open.
+     * @param lockKeys The keys to lock
+     * @param name Transaction name for metrics and logs
+     * @param isolation Isolation level of the transaction
+     * @param work The work to run; must not return null
+     * @return the work's result, or empty if the locks were still busy after the wait deadline
      */
-    public boolean tryAcquireLockWithRetry(String lockKey, int maxRetries) {
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            if (acquireLock(lockKey, LOCK_TIMEOUT_SECONDS)) {
-                return true;
+    public <T> Optional<T> executeWithLocks(List<String> lockKeys, String name, Isolation isolation, Supplier<T> work) {
+        List<String> keys = orderedKeys(lockKeys);
+        if (!lockProvider.releasesOnTransactionEnd()) {
+            String token = acquireLocksOrWait(keys);
+            if (token == null) {
+                return Optional.empty();
             }
-            
-            if (attempt < maxRetries - 1) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(LOCK_WAIT_MILLIS * (attempt + 1));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return false;
-                }
+            try {
+                return Optional.of(transactionRetryExecutor.execute(name, isolation, work));
+            } finally {
+                releaseLocks(keys, token);
             }
         }
-        return false;
+
+        Duration ttl = Duration.ofSeconds(LOCK_TIMEOUT_SECONDS);
+        AtomicReference<T> result = new AtomicReference<>();
+        Supplier<String> attempt = () -> transactionRetryExecutor.execute(name, isolation, () -> {
+            String token = lockProvider.tryAcquire(keys, ttl);
+            if (token == null) {
+                return null;
+            }
+            // Nothing to release by hand; this wakes the next waiter once the transaction ends
+            releaseLocks(keys, token);
+            result.set(work.get());
+            return token;
+        });
+        String token = attempt.get();
+        if (token == null) {
+            token = lockWaitQueue.await(keys, lockMaxWait, attempt);
+        }
+        if (token == null) {
+            // Our failed tries may briefly have held some of the keys; let anyone they blocked retry
+            lockWaitQueue.signal(keys);
+            return Optional.empty();
+        }
+        return Optional.of(result.get());
+    }
+
+    // Deterministic key order so concurrent callers always contend on the same first key
+    private static List<String> orderedKeys(List<String> lockKeys) {
+        return lockKeys.stream().distinct().sorted().toList();
     }
 
     /**
-     * Process payment with proper concurrency control
+     * Process payment as a sequence of guarded single-statement updates at READ COMMITTED.
+     * Each UPDATE re-checks its precondition on the row it locks, so concurrent payments
+     * cannot double-spend or double-pay, and there are no serialization failures to abort on.
      * @param transactionId The transaction ID to process
-     * @return true if payment successful, false otherwise
+     * @return true if payment successful, false if it failed (transaction is marked FAILED)
+     * @throws InsufficientBalanceException if the debit failed; the transaction must roll back
      */
-    @Transactional(isolation = Isolation.SERIALIZABLE, rollbackFor = Exception.class)
+    @Transactional(isolation = Isolation.READ_COMMITTED, rollbackFor = Exception.class)
     public boolean processPayment(Long transactionId) {
         PaymentTransaction transaction = paymentTransactionRepository.findById(transactionId)
                 .orElseThrow(() -> new IllegalArgumentException("Transaction not found"));
 
-        if (transaction.getStatus() != PaymentTransaction.Status.PENDING_OTP) {
+        // Only one caller can move the transaction from PENDING_OTP to PROCESSING
+        int claimed = paymentTransactionRepository.claimForProcessing(transactionId,
+                UUID.randomUUID().toString(), OffsetDateTime.now().plusSeconds(LOCK_TIMEOUT_SECONDS));
+        if (claimed == 0) {
             throw new IllegalStateException("Transaction is not in correct status for processing");
         }
 
-        // Update transaction status to PROCESSING to prevent double processing
-        transaction.setStatus(PaymentTransaction.Status.PROCESSING);
-        transaction.setLockId(UUID.randomUUID().toString());
-        transaction.setLockExpiry(OffsetDateTime.now().plusSeconds(LOCK_TIMEOUT_SECONDS));
-        paymentTransactionRepository.save(transaction);
-
-        try {
-            // Get customer and tuition with optimistic locking
-            Customer customer = customerRepository.findById(transaction.getPayerCustomerId())
-                    .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
-
-            StudentTuition tuition = studentTuitionRepository
-                    .findByStudentIdAndSemesterAndPaidIsFalse(transaction.getStudentId(), transaction.getSemester())
-                    .orElseThrow(() -> new IllegalArgumentException("Tuition not found or already paid"));
-
-            // Verify balance again (double-check)
-            if (customer.getBalance().compareTo(transaction.getAmount()) < 0) {
-                transaction.setStatus(PaymentTransaction.Status.FAILED);
-                paymentTransactionRepository.save(transaction);
-                throw new IllegalStateException("Insufficient balance");
-            }
+        // Mark the tuition paid first: if it is already paid nothing has been changed yet
+        if (studentTuitionRepository.markPaidIfUnpaid(
+                transaction.getStudentId(), transaction.getSemester(), java.time.LocalDate.now()) == 0) {
+            paymentTransactionRepository.completeProcessing(transactionId, PaymentTransaction.Status.FAILED, OffsetDateTime.now());
+            statusNotifier.statusChanged(transactionId, PaymentTransaction.Status.FAILED);
+            return false;
+        }
+        // Then debit. A balance that no longer covers the amount rolls the whole transaction back,
+        // tuition mark included, so no money or tuition ever has to be put back by hand
+        if (customerRepository.debitIfSufficient(transaction.getPayerCustomerId(), transaction.getAmount()) == 0) {
+            throw new InsufficientBalanceException(transactionId);
+        }
 
-            // Process payment atomically
-            customer.setBalance(customer.getBalance().subtract(transaction.getAmount()));
-            customerRepository.save(customer);
-
-            tuition.setPaid(true);
-            tuition.setPaidDate(java.time.LocalDate.now());
-            studentTuitionRepository.save(tuition);
-
-            // Mark transaction as successful
-            transaction.setStatus(PaymentTransaction.Status.SUCCESS);
-            transaction.setCompletedAt(OffsetDateTime.now());
-            paymentTransactionRepository.save(transaction);
-
-            return true;
-
-        } catch (ObjectOptimisticLockingFailureException e) {
-            // Handle optimistic locking failure
-            transaction.setStatus(PaymentTransaction.Status.FAILED);
-            paymentTransactionRepository.save(transaction);
-            throw new RuntimeException("Concurrent modification detected, please retry", e);
-        } catch (DataIntegrityViolationException e) {
-            // Handle data integrity violation
-            transaction.setStatus(PaymentTransaction.Status.FAILED);
-            paymentTransactionRepository.save(transaction);
-            throw new RuntimeException("Data integrity violation", e);
-        } catch (Exception e) {
-            // Handle other exceptions
-            transaction.setStatus(PaymentTransaction.Status.FAILED);
-            paymentTransactionRepository.save(transaction);
-            throw e;
+        paymentTransactionRepository.completeProcessing(transactionId, PaymentTransaction.Status.SUCCESS, OffsetDateTime.now());
+        tuitionIndex.markPaid(transaction.getStudentId(), transaction.getSemester());
+
+        // Confirmation email is written to the outbox in this same transaction and sent after commit
+        Customer payer = customerRepository.findById(transaction.getPayerCustomerId()).orElseThrow();
+        StudentTuition tuition = studentTuitionRepository
+                .findByStudentIdAndSemester(transaction.getStudentId(), transaction.getSemester()).orElseThrow();
+        emailService.queuePaymentConfirmationEmail(payer, transaction, tuition);
+        statusNotifier.statusChanged(transactionId, PaymentTransaction.Status.SUCCESS);
+        return true;
+    }
+
+    /**
+     * Status of a transaction as the payer should see it right now. A PENDING_OTP transaction past
+     * its OTP TTL is reported as FAILED even if the background expirer has not persisted that yet,
+     * so read paths never have to write.
+     * @param transaction The transaction
+     * @return the stored status, or FAILED for an overdue PENDING_OTP transaction
+     */
+    public PaymentTransaction.Status effectiveStatus(PaymentTransaction transaction) {
+        return effectiveStatus(transaction.getStatus(), transaction.getCreatedAt());
+    }
+
+    public PaymentTransaction.Status effectiveStatus(PaymentTransaction.Status status, OffsetDateTime createdAt) {
+        if (status == PaymentTransaction.Status.PENDING_OTP
+                && !createdAt.plusSeconds(otpTtlSeconds).isAfter(OffsetDateTime.now())) {
+            return PaymentTransaction.Status.FAILED;
         }
+        return status;
     }
 
     /**
@@ -182,38 +274,66 @@ public class PaymentService {
     }
 
     /**
-     * Clean up expired locks
+     * Mark a transaction FAILED after its payment attempt rolled back, leaving it PENDING_OTP again
+     * @param transactionId Transaction ID
+     * @return true if the transaction was failed by this call
+     */
+    @Transactional
+    public boolean failPayment(Long transactionId) {
+        int failed = paymentTransactionRepository.failIfPending(transactionId, OffsetDateTime.now());
+        if (failed == 0) {
+            return false;
+        }
+        otpStore.clear(transactionId);
+        statusNotifier.statusChanged(transactionId, PaymentTransaction.Status.FAILED);
+        return true;
+    }
+
+    /**
+     * Mark a single transaction FAILED if it is still waiting for an OTP past its TTL
+     * @param transactionId Transaction ID
+     * @return true if the transaction was expired by this call
      */
-    public void cleanupExpiredLocks() {
-        // This method can be called periodically to clean up expired locks
-        // Implementation depends on your specific requirements
+    @Transactional
+    public boolean expireIfPending(Long transactionId) {
+        OffsetDateTime now = OffsetDateTime.now();
+        int expired = paymentTransactionRepository.expireIfPending(transactionId, now.minusSeconds(otpTtlSeconds), now);
+        if (expired == 0) {
+            return false;
+        }
+        otpStore.clear(transactionId);
+        statusNotifier.statusChanged(transactionId, PaymentTransaction.Status.FAILED);
+        return true;
     }
 
     /**
      * Process expired OTP transactions - mark them as FAILED
-     * This method should be called periodically to clean up expired transactions
+     * Works in chunks claimed with SKIP LOCKED, so several nodes sweeping at once split the
+     * backlog between them instead of updating the same rows
+     * @return number of transactions expired by this call
      */
-    @Transactional
-    public void processExpiredOtpTransactions() {
-        // Find all PENDING_OTP transactions that are older than OTP TTL
-        OffsetDateTime cutoffTime = OffsetDateTime.now().minusSeconds(otpTtlSeconds);
-        List<PaymentTransaction> expiredTransactions = paymentTransactionRepository
-                .findByStatusAndCreatedAtBefore(PaymentTransaction.Status.PENDING_OTP, cutoffTime);
-        
-        for (PaymentTransaction transaction : expiredTransactions) {
-            // OTP has expired based on time, mark transaction as FAILED
-            transaction.setStatus(PaymentTransaction.Status.FAILED);
-            transaction.setCompletedAt(OffsetDateTime.now());
-            paymentTransactionRepository.save(transaction);
-            
-            // Clean up any remaining Redis keys
-            String otpKey = "otp:txn:" + transaction.getId();
-            String attemptKey = "otp:attempt:" + transaction.getId();
-            redisTemplate.delete(otpKey);
-            redisTemplate.delete(attemptKey);
-            
-            System.out.println("Marked expired transaction " + transaction.getId() + " as FAILED");
+    public int processExpiredOtpTransactions() {
+        int total = 0;
+        List<Long> expiredIds;
+        do {
+            // One short transaction per chunk: claim, update and return ids in a single statement
+            expiredIds = transactionTemplate.execute(status -> {
+                OffsetDateTime now = OffsetDateTime.now();
+                return paymentTransactionRepository.expireOverdueChunk(
+                        now.minusSeconds(otpTtlSeconds), now, expiryChunkSize);
+            });
+            if (expiredIds == null || expiredIds.isEmpty()) break;
+
+            // Clean up any remaining OTP state in one round trip
+            otpStore.clearAll(expiredIds);
+            statusNotifier.statusChanged(expiredIds, PaymentTransaction.Status.FAILED);
+            total += expiredIds.size();
+        } while (expiredIds.size() == expiryChunkSize);
+
+        if (total > 0) {
+            System.out.println("Marked " + total + " expired transactions as FAILED");
         }
+        return total;
     }
 
 }
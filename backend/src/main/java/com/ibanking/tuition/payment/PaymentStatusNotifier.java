@@ -0,0 +1,59 @@
+package com.ibanking.tuition.payment;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+
+/**
+ * Announces transaction status changes to every backend node over Redis pub/sub, where
+ * {@link PaymentStatusStreams} forwards them to the SSE clients watching the transaction.
+ * Messages are {@code txnId|STATUS}.
+ */
+@Component
+public class PaymentStatusNotifier {
+
+    public static final String STATUS_CHANNEL = "payment:status";
+
+    private final StringRedisTemplate redisTemplate;
+
+    public PaymentStatusNotifier(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Publish a status change, after commit when called inside a transaction so clients never
+     * see a state that is rolled back
+     * @param transactionId Transaction whose status changed
+     * @param status New status
+     */
+    public void statusChanged(Long transactionId, PaymentTransaction.Status status) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(transactionId, status);
+                }
+            });
+        } else {
+            publish(transactionId, status);
+        }
+    }
+
+    public void statusChanged(Collection<Long> transactionIds, PaymentTransaction.Status status) {
+        for (Long transactionId : transactionIds) {
+            statusChanged(transactionId, status);
+        }
+    }
+
+    private void publish(Long transactionId, PaymentTransaction.Status status) {
+        try {
+            redisTemplate.convertAndSend(STATUS_CHANNEL, transactionId + "|" + status.name());
+        } catch (Exception e) {
+            // Clients still learn the outcome from their next request; never fail the payment for this
+            System.err.println("Failed to publish status of transaction " + transactionId + ": " + e.getMessage());
+        }
+    }
+}
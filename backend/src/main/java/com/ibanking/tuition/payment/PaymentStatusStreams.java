@@ -0,0 +1,120 @@
+package com.ibanking.tuition.payment;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Event streams of transaction status. Each open stream is an idle async request
+ * registered here by transaction id; status changes published by any node through
+ * {@link PaymentStatusNotifier} arrive on one shared Redis subscription and are pushed to the
+ * streams of that transaction. Streams end once the transaction succeeds or fails.
+ */
+@Component
+public class PaymentStatusStreams implements MessageListener {
+
+    private final Map<Long, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final Duration otpTtl;
+
+    private record Subscription(SseEmitter emitter, OffsetDateTime deadline) {}
+
+    public PaymentStatusStreams(RedisMessageListenerContainer container,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.otp.ttlSeconds}") int otpTtlSeconds) {
+        this.otpTtl = Duration.ofSeconds(otpTtlSeconds);
+        container.addMessageListener(this, new ChannelTopic(PaymentStatusNotifier.STATUS_CHANNEL));
+        Gauge.builder("payment.events.streams", open, AtomicInteger::get)
+                .description("Open transaction status streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open a status stream for a transaction. The current status is sent immediately; the stream
+     * is registered first so a change racing with the initial event is not lost.
+     * @param transaction Transaction to watch
+     * @param currentStatus Status to report initially
+     * @return emitter to return from the controller
+     */
+    public SseEmitter open(PaymentTransaction transaction, PaymentTransaction.Status currentStatus) {
+        OffsetDateTime deadline = transaction.getCreatedAt().plus(otpTtl);
+        // Outlive the OTP window a little so the expiry event is still delivered
+        long timeoutMillis = Math.max(0, Duration.between(OffsetDateTime.now(), deadline).toMillis()) + 30_000;
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = new Subscription(emitter, deadline);
+        Long transactionId = transaction.getId();
+
+        subscriptions.computeIfAbsent(transactionId, id -> new CopyOnWriteArrayList<>()).add(subscription);
+        open.incrementAndGet();
+        Runnable remove = () -> unregister(transactionId, subscription);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove.run());
+
+        send(transactionId, subscription, currentStatus);
+        return emitter;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep < 0) return;
+        Long transactionId;
+        PaymentTransaction.Status status;
+        try {
+            transactionId = Long.valueOf(body.substring(0, sep));
+            status = PaymentTransaction.Status.valueOf(body.substring(sep + 1));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        List<Subscription> watching = subscriptions.get(transactionId);
+        if (watching == null) return;
+        for (Subscription subscription : watching) {
+            send(transactionId, subscription, status);
+        }
+    }
+
+    private void send(Long transactionId, Subscription subscription, PaymentTransaction.Status status) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("transactionId", transactionId);
+        data.put("status", status.name());
+        data.put("remainingSeconds", Math.max(0, Duration.between(OffsetDateTime.now(), subscription.deadline()).toSeconds()));
+        try {
+            subscription.emitter().send(SseEmitter.event().name("status").data(data));
+            if (status == PaymentTransaction.Status.SUCCESS || status == PaymentTransaction.Status.FAILED) {
+                subscription.emitter().complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away or the stream already completed
+            subscription.emitter().completeWithError(e);
+            unregister(transactionId, subscription);
+        }
+    }
+
+    private void unregister(Long transactionId, Subscription subscription) {
+        subscriptions.computeIfPresent(transactionId, (id, list) -> {
+            if (list.remove(subscription)) {
+                open.decrementAndGet();
+            }
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
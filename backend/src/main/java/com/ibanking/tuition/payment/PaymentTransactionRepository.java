@@ -1,12 +1,30 @@
 package com.ibanking.tuition.payment;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.time.OffsetDateTime;
 import java.util.List;
 
 public interface PaymentTransactionRepository extends JpaRepository<PaymentTransaction, Long> {
-    java.util.List<PaymentTransaction> findByPayerCustomerIdOrderByCreatedAtDesc(Long payerCustomerId);
-    java.util.List<PaymentTransaction> findByStatusAndCreatedAtBefore(PaymentTransaction.Status status, OffsetDateTime createdAt);
+    // History pages, newest first. Keyset on (createdAt, id): a later page seeks past the last row of
+    // the previous one instead of skipping an offset, so every page costs the same
+    @Query("select new com.ibanking.tuition.payment.PaymentHistoryRow(p.id, p.studentId, p.semester, p.amount, p.status, p.createdAt, p.completedAt) " +
+           "from PaymentTransaction p where p.payerCustomerId = :payerId " +
+           "order by p.createdAt desc, p.id desc")
+    List<PaymentHistoryRow> findHistoryPage(@Param("payerId") Long payerId, Pageable page);
+
+    @Query("select new com.ibanking.tuition.payment.PaymentHistoryRow(p.id, p.studentId, p.semester, p.amount, p.status, p.createdAt, p.completedAt) " +
+           "from PaymentTransaction p where p.payerCustomerId = :payerId " +
+           "and (p.createdAt < :createdAt or (p.createdAt = :createdAt and p.id < :id)) " +
+           "order by p.createdAt desc, p.id desc")
+    List<PaymentHistoryRow> findHistoryPageAfter(@Param("payerId") Long payerId,
+                                                 @Param("createdAt") OffsetDateTime createdAt,
+                                                 @Param("id") Long id,
+                                                 Pageable page);
+    java.util.List<PaymentTransaction> findByStatus(PaymentTransaction.Status status);
     
     // Find pending transactions for the same student and semester
     List<PaymentTransaction> findByStudentIdAndSemesterAndStatusIn(
@@ -20,6 +38,51 @@ public interface PaymentTransactionRepository extends JpaRepository<PaymentTrans
         Long payerCustomerId,
         List<PaymentTransaction.Status> statuses
     );
+    
+    // Move PENDING_OTP -> PROCESSING; returns 0 if another request already claimed the transaction
+    @Modifying
+    @Query("update PaymentTransaction p set p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.PROCESSING, " +
+           "p.lockId = :lockId, p.lockExpiry = :lockExpiry, p.version = p.version + 1 " +
+           "where p.id = :id and p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.PENDING_OTP")
+    int claimForProcessing(@Param("id") Long id,
+                           @Param("lockId") String lockId,
+                           @Param("lockExpiry") OffsetDateTime lockExpiry);
+    
+    // Finish a claimed transaction with SUCCESS or FAILED
+    @Modifying
+    @Query("update PaymentTransaction p set p.status = :status, p.completedAt = :completedAt, p.version = p.version + 1 " +
+           "where p.id = :id and p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.PROCESSING")
+    int completeProcessing(@Param("id") Long id,
+                           @Param("status") PaymentTransaction.Status status,
+                           @Param("completedAt") OffsetDateTime completedAt);
+    
+    // Fail a transaction still waiting for its OTP; returns 0 if it was confirmed or failed meanwhile
+    @Modifying
+    @Query("update PaymentTransaction p set p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.FAILED, " +
+           "p.completedAt = :completedAt, p.version = p.version + 1 " +
+           "where p.id = :id and p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.PENDING_OTP")
+    int failIfPending(@Param("id") Long id,
+                      @Param("completedAt") OffsetDateTime completedAt);
+    
+    // Fail a transaction whose OTP window has passed; returns 0 if it was confirmed, failed or resent meanwhile
+    @Modifying
+    @Query("update PaymentTransaction p set p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.FAILED, " +
+           "p.completedAt = :completedAt, p.version = p.version + 1 " +
+           "where p.id = :id and p.status = com.ibanking.tuition.payment.PaymentTransaction.Status.PENDING_OTP " +
+           "and p.createdAt <= :cutoff")
+    int expireIfPending(@Param("id") Long id,
+                        @Param("cutoff") OffsetDateTime cutoff,
+                        @Param("completedAt") OffsetDateTime completedAt);
+    
+    // Claim up to :limit overdue PENDING_OTP rows, skipping rows another node is already expiring,
+    // and fail them all in one statement; returns the ids that were failed
+    @Query(value = "WITH due AS (" +
+                   "  SELECT id FROM payment_transactions" +
+                   "  WHERE status = 'PENDING_OTP' AND created_at <= :cutoff" +
+                   "  ORDER BY created_at LIMIT :limit FOR UPDATE SKIP LOCKED" +
+                   ") UPDATE payment_transactions p SET status = 'FAILED', completed_at = :completedAt, version = p.version + 1 " +
+                   "FROM due WHERE p.id = due.id RETURNING p.id", nativeQuery = true)
+    List<Long> expireOverdueChunk(@Param("cutoff") OffsetDateTime cutoff,
+                                  @Param("completedAt") OffsetDateTime completedAt,
+                                  @Param("limit") int limit);
 }
-
-
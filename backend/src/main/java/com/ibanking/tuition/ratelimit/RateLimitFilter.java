@@ -0,0 +1,178 @@
+package com.ibanking.tuition.ratelimit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibanking.tuition.user.Customer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rejects requests over their token-bucket budget with 429 and Retry-After before they reach the
+ * database or the password encoder. Rules come from {@link RateLimitProperties}; USERNAME rules
+ * read the username from the JSON body, which is buffered so the controller can still read it.
+ * Runs inside the security chain after CORS so browsers can read the 429.
+ */
+@Component
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final int MAX_BUFFERED_BODY = 8 * 1024;
+
+    private final RateLimitProperties properties;
+    private final TokenBucketLimiter limiter;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+
+    public RateLimitFilter(RateLimitProperties properties, TokenBucketLimiter limiter,
+                           ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.limiter = limiter;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.enabled() || properties.rules().stream().noneMatch(rule -> matches(rule, request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        List<RateLimitProperties.Rule> rules = properties.rules().stream().filter(rule -> matches(rule, request)).toList();
+        HttpServletRequest current = request;
+        String username = null;
+        if (rules.stream().anyMatch(rule -> rule.key() == RateLimitProperties.KeyType.USERNAME)) {
+            CachedBodyRequest cached = CachedBodyRequest.wrap(request);
+            current = cached;
+            username = usernameFrom(cached.body());
+        }
+
+        for (RateLimitProperties.Rule rule : rules) {
+            String subject = rule.key() == RateLimitProperties.KeyType.IP ? request.getRemoteAddr() : username;
+            // Unparseable bodies carry no username; validation rejects them without touching the encoder
+            if (subject == null) continue;
+            TokenBucketLimiter.Decision decision = limiter.take(
+                    "rl:" + rule.name() + ":" + subject, rule.capacity(), rule.refillPerMinute());
+            if (!decision.allowed()) {
+                reject(response, rule, decision);
+                return;
+            }
+        }
+        filterChain.doFilter(current, response);
+    }
+
+    private void reject(HttpServletResponse response, RateLimitProperties.Rule rule, TokenBucketLimiter.Decision decision) throws IOException {
+        rejections.computeIfAbsent(rule.name(), name -> Counter.builder("ratelimit.rejected")
+                .description("Requests refused by a rate limit rule")
+                .tag("rule", name)
+                .register(meterRegistry)).increment();
+        long retryAfterSeconds = Math.max(1, (decision.retryAfterMillis() + 999) / 1000);
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of(
+                "message", "Too many requests",
+                "retryAfterSeconds", retryAfterSeconds));
+    }
+
+    private static boolean matches(RateLimitProperties.Rule rule, HttpServletRequest request) {
+        return rule.method().equalsIgnoreCase(request.getMethod())
+                && rule.path().equals(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    private String usernameFrom(byte[] body) {
+        if (body.length == 0) return null;
+        try {
+            JsonNode username = objectMapper.readTree(body).path("username");
+            return username.isTextual() && !username.asText().isBlank()
+                    ? Customer.normalizeUsername(username.asText())
+                    : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Request whose first bytes have been read for inspection and are replayed downstream,
+     * followed by whatever of the original body was not read
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private final boolean complete;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body, boolean complete) {
+            super(request);
+            this.body = body;
+            this.complete = complete;
+        }
+
+        static CachedBodyRequest wrap(HttpServletRequest request) throws IOException {
+            byte[] prefix = request.getInputStream().readNBytes(MAX_BUFFERED_BODY + 1);
+            return new CachedBodyRequest(request, prefix, prefix.length <= MAX_BUFFERED_BODY);
+        }
+
+        /**
+         * @return the whole body, or an empty array if it is larger than the inspection limit
+         */
+        byte[] body() { return complete ? body : new byte[0]; }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            InputStream in = complete
+                    ? new ByteArrayInputStream(body)
+                    : new SequenceInputStream(new ByteArrayInputStream(body), super.getInputStream());
+            return new ServletInputStream() {
+                private boolean finished;
+
+                @Override public boolean isFinished() { return finished; }
+                @Override public boolean isReady() { return true; }
+                @Override public void setReadListener(ReadListener listener) { throw new UnsupportedOperationException(); }
+
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b < 0) finished = true;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    if (n < 0) finished = true;
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
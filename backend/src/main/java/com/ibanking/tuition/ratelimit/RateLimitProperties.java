@@ -0,0 +1,31 @@
+package com.ibanking.tuition.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+/**
+ * Token-bucket rules under {@code app.ratelimit}. A rule applies to requests matching its method
+ * and path and keeps one bucket per client IP or per submitted username.
+ * @param enabled Master switch
+ * @param rules Rules; a request must pass every rule that matches it
+ */
+@ConfigurationProperties(prefix = "app.ratelimit")
+public record RateLimitProperties(boolean enabled, List<Rule> rules) {
+
+    public enum KeyType { IP, USERNAME }
+
+    /**
+     * @param name Identifies the rule in bucket keys and metrics
+     * @param method HTTP method to match
+     * @param path Exact request path to match
+     * @param key What a bucket is kept per
+     * @param capacity Burst size
+     * @param refillPerMinute Tokens added back per minute
+     */
+    public record Rule(String name, String method, String path, KeyType key, int capacity, int refillPerMinute) {}
+
+    public RateLimitProperties {
+        rules = rules == null ? List.of() : rules;
+    }
+}
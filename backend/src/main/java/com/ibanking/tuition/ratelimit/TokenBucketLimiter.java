@@ -0,0 +1,106 @@
+package com.ibanking.tuition.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token buckets shared by all nodes through Redis. Take-a-token is one Lua script using the Redis
+ * clock, so concurrent requests on different nodes cannot overdraw a bucket. If Redis is
+ * unreachable, buckets fall back to this JVM so the limits still hold per node.
+ */
+@Component
+public class TokenBucketLimiter {
+
+    // KEYS[1]=bucket; ARGV: capacity, refill tokens per millisecond
+    // Bucket hash holds tokens and ts (ms). Returns {1, 0} if allowed, {0, retryAfterMillis} otherwise
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1]) " +
+            "local rate = tonumber(ARGV[2]) " +
+            "local t = redis.call('TIME') " +
+            "local now = t[1] * 1000 + math.floor(t[2] / 1000) " +
+            "local b = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(b[1]) or capacity " +
+            "local ts = tonumber(b[2]) or now " +
+            "tokens = math.min(capacity, tokens + (now - ts) * rate) " +
+            "local allowed = 0 " +
+            "local retry = 0 " +
+            "if tokens >= 1 then tokens = tokens - 1 allowed = 1 " +
+            "else retry = math.ceil((1 - tokens) / rate) end " +
+            "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now) " +
+            "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000) " +
+            "return {allowed, retry}",
+            List.class);
+
+    /**
+     * @param allowed Whether the request may proceed
+     * @param retryAfterMillis When a token will next be available, if not allowed
+     */
+    public record Decision(boolean allowed, long retryAfterMillis) {}
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, LocalBucket> localBuckets = new ConcurrentHashMap<>();
+    private final Counter fallbacks;
+
+    private static final int MAX_LOCAL_BUCKETS = 100_000;
+
+    private static final class LocalBucket {
+        double tokens;
+        long ts;
+
+        LocalBucket(double tokens, long ts) {
+            this.tokens = tokens;
+            this.ts = ts;
+        }
+    }
+
+    public TokenBucketLimiter(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.fallbacks = Counter.builder("ratelimit.local.fallbacks")
+                .description("Rate limit decisions taken locally because Redis was unavailable")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take one token from a bucket
+     * @param bucketKey Bucket identity
+     * @param capacity Burst size
+     * @param refillPerMinute Tokens restored per minute
+     */
+    public Decision take(String bucketKey, int capacity, int refillPerMinute) {
+        double ratePerMilli = refillPerMinute / 60_000.0;
+        try {
+            List<?> result = redisTemplate.execute(TAKE_SCRIPT, List.of(bucketKey),
+                    String.valueOf(capacity), String.valueOf(ratePerMilli));
+            return new Decision(((Number) result.get(0)).longValue() == 1L, ((Number) result.get(1)).longValue());
+        } catch (Exception e) {
+            fallbacks.increment();
+            return takeLocally(bucketKey, capacity, ratePerMilli);
+        }
+    }
+
+    private Decision takeLocally(String bucketKey, int capacity, double ratePerMilli) {
+        long now = System.currentTimeMillis();
+        if (localBuckets.size() > MAX_LOCAL_BUCKETS) {
+            // Full buckets carry no state worth keeping
+            localBuckets.values().removeIf(b -> b.tokens + (now - b.ts) * ratePerMilli >= capacity);
+        }
+        LocalBucket bucket = localBuckets.computeIfAbsent(bucketKey, k -> new LocalBucket(capacity, now));
+        synchronized (bucket) {
+            bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.ts) * ratePerMilli);
+            bucket.ts = now;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return new Decision(true, 0);
+            }
+            return new Decision(false, (long) Math.ceil((1 - bucket.tokens) / ratePerMilli));
+        }
+    }
+}
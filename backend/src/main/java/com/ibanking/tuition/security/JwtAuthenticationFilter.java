@@ -1,9 +1,11 @@
 package com.ibanking.tuition.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -19,10 +21,16 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final TokenVersionStore tokenVersionStore;
+    private final boolean statelessAuth;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService,
+                                   TokenVersionStore tokenVersionStore,
+                                   @Value("${app.security.statelessAuth}") boolean statelessAuth) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.tokenVersionStore = tokenVersionStore;
+        this.statelessAuth = statelessAuth;
     }
 
     @Override
@@ -30,10 +38,23 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
             String token = bearerToken.substring(7);
-            String username = jwtService.extractUsername(token);
+            // One verification per request; signature, expiry and subject all come from these claims
+            Claims claims = jwtService.verify(token);
+            String username = claims != null ? claims.getSubject() : null;
             if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                if (jwtService.isTokenValid(token, userDetails)) {
+                UserDetails userDetails = statelessAuth ? jwtService.principalFrom(claims) : null;
+                if (userDetails != null) {
+                    // Stateless: principal comes from the signed claims; only the revocation version is checked
+                    Long customerId = claims.get(JwtService.CLAIM_CUSTOMER_ID, Long.class);
+                    Long tokenVersion = claims.get(JwtService.CLAIM_TOKEN_VERSION, Long.class);
+                    if (tokenVersion != tokenVersionStore.current(customerId)) {
+                        userDetails = null;
+                    }
+                } else {
+                    // Tokens issued before the cid/roles/tv claims, or stateless mode off
+                    userDetails = userDetailsService.loadUserByUsername(username);
+                }
+                if (userDetails != null && jwtService.isTokenValid(claims, userDetails)) {
                     UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                     auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
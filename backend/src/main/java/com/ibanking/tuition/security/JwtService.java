@@ -1,10 +1,14 @@
 package com.ibanking.tuition.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
@@ -12,45 +16,100 @@ import javax.crypto.SecretKey;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.List;
 
 @Service
 public class JwtService {
 
     private final SecretKey secretKey;
     private final int expirationMinutes;
+    // Parsers are immutable and thread-safe; build once instead of per call
+    private final JwtParser parser;
+    private final VerifiedTokenCache verifiedTokenCache;
 
     public JwtService(@Value("${app.security.jwtSecret}") String base64Secret,
-                      @Value("${app.security.jwtExpirationMinutes}") int expirationMinutes) {
+                      @Value("${app.security.jwtExpirationMinutes}") int expirationMinutes,
+                      VerifiedTokenCache verifiedTokenCache) {
         this.secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(Base64Util.ensureBase64(base64Secret)));
         this.expirationMinutes = expirationMinutes;
+        this.parser = Jwts.parserBuilder().setSigningKey(secretKey).build();
+        this.verifiedTokenCache = verifiedTokenCache;
     }
 
-    public String generateToken(String username) {
+    public static final String CLAIM_CUSTOMER_ID = "cid";
+    public static final String CLAIM_ROLES = "roles";
+    public static final String CLAIM_TOKEN_VERSION = "tv";
+
+    /**
+     * Issue a token carrying everything needed to authenticate later requests without a
+     * database lookup: customer id, roles and the customer's current token version
+     * @param user Authenticated user
+     * @param customerId Customer ID
+     * @param tokenVersion Current version from {@link TokenVersionStore}
+     * @return signed compact JWT
+     */
+    public String generateToken(UserDetails user, Long customerId, long tokenVersion) {
+        return generateToken(user.getUsername(), customerId, roles(user), tokenVersion);
+    }
+
+    public String generateToken(String username, Long customerId, List<String> roles, long tokenVersion) {
         Instant now = Instant.now();
         return Jwts.builder()
                 .setSubject(username)
+                .claim(CLAIM_CUSTOMER_ID, customerId)
+                .claim(CLAIM_ROLES, roles)
+                .claim(CLAIM_TOKEN_VERSION, tokenVersion)
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plus(expirationMinutes, ChronoUnit.MINUTES)))
                 .signWith(secretKey)
                 .compact();
     }
 
-    public String extractUsername(String token) {
-        return extractAllClaims(token).getSubject();
+    public static List<String> roles(UserDetails user) {
+        return user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+    }
+
+    /**
+     * Verify a token once and return all of its claims. Tokens verified recently are answered
+     * from {@link VerifiedTokenCache} without repeating the signature check.
+     * @param token Compact JWT
+     * @return claims of a valid, unexpired token, or null if the token is invalid or expired
+     */
+    public Claims verify(String token) {
+        Claims cached = verifiedTokenCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        verifiedTokenCache.put(token, claims);
+        return claims;
     }
 
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        String username = extractUsername(token);
-        Date exp = extractAllClaims(token).getExpiration();
-        return username.equals(userDetails.getUsername()) && exp.after(new Date());
+    /**
+     * Build the principal purely from verified claims
+     * @param claims Claims returned by {@link #verify}
+     * @return the principal, or null if the token predates the cid/roles/tv claims
+     */
+    public UserDetails principalFrom(Claims claims) {
+        Object roles = claims.get(CLAIM_ROLES);
+        if (!(roles instanceof List<?> roleList) || claims.get(CLAIM_CUSTOMER_ID) == null
+                || claims.get(CLAIM_TOKEN_VERSION) == null) {
+            return null;
+        }
+        return User.withUsername(claims.getSubject())
+                .password("")
+                .authorities(roleList.stream().map(String::valueOf).toArray(String[]::new))
+                .build();
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        Date exp = claims.getExpiration();
+        return claims.getSubject().equals(userDetails.getUsername()) && exp != null && exp.after(new Date());
     }
 
     static class Base64Util {
@@ -0,0 +1,106 @@
+package com.ibanking.tuition.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt checks and hashing on a dedicated, bounded pool so a login storm burns at most
+ * {@code app.security.hashing.threads} cores and cannot occupy request threads. When the queue
+ * is full, new checks are rejected at once rather than piling up behind the ones in flight.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor pool;
+    private final String dummyHash;
+    private final Counter rejected;
+    private final Timer hashTime;
+
+    public PasswordHashingExecutor(PasswordEncoder passwordEncoder,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.security.hashing.threads}") int threads,
+                                   @Value("${app.security.hashing.queueCapacity}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "password-hashing-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        // Checked against for unknown usernames so they cost the same as a wrong password
+        this.dummyHash = passwordEncoder.encode("dummy-password-for-unknown-users");
+
+        Gauge.builder("auth.hashing.queue.depth", pool, p -> p.getQueue().size())
+                .description("Password checks waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.hashing.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Password checks currently running")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.hashing.rejected")
+                .description("Password checks rejected because the hashing queue was full")
+                .register(meterRegistry);
+        this.hashTime = Timer.builder("auth.hashing.time")
+                .description("Time spent in a single password check")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check a password on the hashing pool
+     * @param rawPassword Password as entered
+     * @param encodedPassword Stored hash, or null for an unknown user
+     * @return future completing with true if the password matches; completes exceptionally with
+     *         {@link RejectedExecutionException} when the pool is saturated
+     */
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hashTime.record(() -> {
+                if (encodedPassword == null) {
+                    passwordEncoder.matches(rawPassword, dummyHash);
+                    return false;
+                }
+                return passwordEncoder.matches(rawPassword, encodedPassword);
+            }), pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Hash a new password on the hashing pool
+     * @param rawPassword Password as entered
+     * @return future completing with the encoded password; completes exceptionally with
+     *         {@link RejectedExecutionException} when the pool is saturated
+     */
+    public CompletableFuture<String> encode(String rawPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hashTime.record(() -> passwordEncoder.encode(rawPassword)), pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,135 @@
+package com.ibanking.tuition.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque, rotating refresh tokens. Only the SHA-256 of a token is stored, as the hash
+ * {@code auth:rt:{digest}} with fields cid, username, roles, tv (token version at issue),
+ * fam (family id) and used. Every refresh marks the presented token used and issues its successor
+ * in the same family. Presenting a used token means it leaked, so the whole family is revoked by
+ * deleting {@code auth:rtf:{fam}}.
+ */
+@Component
+public class RefreshTokenStore {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // KEYS[1]=token key, KEYS[2]=family key; ARGV: cid, username, roles, tv, fam, ttlMillis
+    private static final DefaultRedisScript<Long> ISSUE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HSET', KEYS[1], 'cid', ARGV[1], 'username', ARGV[2], 'roles', ARGV[3], 'tv', ARGV[4], 'fam', ARGV[5], 'used', '0') " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[6]) " +
+            "redis.call('SET', KEYS[2], '1', 'PX', ARGV[6]) " +
+            "return 1",
+            Long.class);
+
+    // KEYS[1]=presented token key; ARGV: successor digest, ttlMillis
+    // Returns {1, cid, username, roles, tv} on rotation, {-1} if unknown/expired, {-2} on reuse or revoked family
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ROTATE_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('HMGET', KEYS[1], 'cid', 'username', 'roles', 'tv', 'fam', 'used') " +
+            "if not t[1] then return {-1} end " +
+            "local famKey = 'auth:rtf:' .. t[5] " +
+            "if t[6] == '1' or redis.call('EXISTS', famKey) == 0 then " +
+            "  redis.call('DEL', famKey) " +
+            "  return {-2} " +
+            "end " +
+            "redis.call('HSET', KEYS[1], 'used', '1') " +
+            "local nextKey = 'auth:rt:' .. ARGV[1] " +
+            "redis.call('HSET', nextKey, 'cid', t[1], 'username', t[2], 'roles', t[3], 'tv', t[4], 'fam', t[5], 'used', '0') " +
+            "redis.call('PEXPIRE', nextKey, ARGV[2]) " +
+            "redis.call('PEXPIRE', famKey, ARGV[2]) " +
+            "return {1, t[1], t[2], t[3], t[4]}",
+            List.class);
+
+    // KEYS[1]=token key
+    private static final DefaultRedisScript<Long> REVOKE_SCRIPT = new DefaultRedisScript<>(
+            "local fam = redis.call('HGET', KEYS[1], 'fam') " +
+            "if not fam then return 0 end " +
+            "return redis.call('DEL', 'auth:rtf:' .. fam)",
+            Long.class);
+
+    public enum Outcome { ROTATED, INVALID, REUSED }
+
+    /**
+     * Result of a refresh; on ROTATED carries the successor token and the identity to mint an access token for
+     */
+    public record Rotation(Outcome outcome, String refreshToken, Long customerId, String username,
+                           List<String> roles, long tokenVersion) {}
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public RefreshTokenStore(StringRedisTemplate redisTemplate,
+                             @Value("${app.security.refreshTokenDays}") int refreshTokenDays) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = Duration.ofDays(refreshTokenDays);
+    }
+
+    /**
+     * Start a new token family at login
+     * @return the refresh token to hand to the client
+     */
+    public String issue(Long customerId, String username, List<String> roles, long tokenVersion) {
+        String token = newToken();
+        String family = newToken();
+        redisTemplate.execute(ISSUE_SCRIPT, List.of(key(token), familyKey(family)),
+                String.valueOf(customerId), username, String.join(",", roles),
+                String.valueOf(tokenVersion), family, String.valueOf(ttl.toMillis()));
+        return token;
+    }
+
+    /**
+     * Exchange a refresh token for its successor in one atomic script
+     */
+    public Rotation rotate(String refreshToken) {
+        String next = newToken();
+        List<?> result = redisTemplate.execute(ROTATE_SCRIPT, List.of(key(refreshToken)),
+                digest(next), String.valueOf(ttl.toMillis()));
+        long status = ((Number) result.get(0)).longValue();
+        if (status == -1L) return new Rotation(Outcome.INVALID, null, null, null, List.of(), 0);
+        if (status == -2L) return new Rotation(Outcome.REUSED, null, null, null, List.of(), 0);
+        String roles = String.valueOf(result.get(3));
+        return new Rotation(Outcome.ROTATED, next,
+                Long.valueOf(String.valueOf(result.get(1))),
+                String.valueOf(result.get(2)),
+                roles.isEmpty() ? List.of() : List.of(roles.split(",")),
+                Long.parseLong(String.valueOf(result.get(4))));
+    }
+
+    /**
+     * Revoke the family of a refresh token (logout)
+     */
+    public void revoke(String refreshToken) {
+        redisTemplate.execute(REVOKE_SCRIPT, List.of(key(refreshToken)));
+    }
+
+    private static String key(String token) { return "auth:rt:" + digest(token); }
+
+    private static String familyKey(String family) { return "auth:rtf:" + family; }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
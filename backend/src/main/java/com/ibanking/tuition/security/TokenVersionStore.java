@@ -0,0 +1,78 @@
+package com.ibanking.tuition.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-customer token version, carried in every JWT as the {@code tv} claim. Bumping the version
+ * (password change, sign out everywhere) revokes all tokens issued before it. Versions live in
+ * Redis under {@code auth:tv:{customerId}} and are cached locally for a short time; a bump is
+ * broadcast so every node drops its cached value immediately.
+ */
+@Component
+public class TokenVersionStore implements MessageListener {
+
+    public static final String BUMP_CHANNEL = "auth:tv";
+
+    private final StringRedisTemplate redisTemplate;
+    private final long cacheMillis;
+    private final Map<Long, Cached> cache = new ConcurrentHashMap<>();
+
+    private record Cached(long version, long fetchedAtMillis) {}
+
+    public TokenVersionStore(StringRedisTemplate redisTemplate,
+                             RedisMessageListenerContainer container,
+                             @Value("${app.security.tokenVersionCacheMillis}") long cacheMillis) {
+        this.redisTemplate = redisTemplate;
+        this.cacheMillis = cacheMillis;
+        container.addMessageListener(this, new ChannelTopic(BUMP_CHANNEL));
+    }
+
+    public static String key(Long customerId) { return "auth:tv:" + customerId; }
+
+    /**
+     * @param customerId Customer ID
+     * @return current token version; 0 if tokens were never revoked
+     */
+    public long current(Long customerId) {
+        long now = System.currentTimeMillis();
+        Cached cached = cache.get(customerId);
+        if (cached != null && now - cached.fetchedAtMillis() < cacheMillis) {
+            return cached.version();
+        }
+        String value = redisTemplate.opsForValue().get(key(customerId));
+        long version = value != null ? Long.parseLong(value) : 0L;
+        cache.put(customerId, new Cached(version, now));
+        return version;
+    }
+
+    /**
+     * Revoke every token issued to the customer so far
+     * @param customerId Customer ID
+     * @return the new version to put in tokens issued from now on
+     */
+    public long bump(Long customerId) {
+        Long version = redisTemplate.opsForValue().increment(key(customerId));
+        cache.remove(customerId);
+        redisTemplate.convertAndSend(BUMP_CHANNEL, String.valueOf(customerId));
+        return version != null ? version : 0L;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            cache.remove(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            // Not ours
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ibanking.tuition.security;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Claims of recently verified tokens, keyed by the SHA-256 digest of the whole token (signature
+ * included), so a token is only served from here if exactly that token was verified before.
+ * Entries never outlive the token's own {@code exp}, and the map is bounded.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final Counter hits;
+    private final Counter misses;
+
+    private record Entry(Claims claims, long expiresAtMillis) {}
+
+    public VerifiedTokenCache(MeterRegistry meterRegistry,
+                              @Value("${app.security.tokenCacheSize}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        Gauge.builder("auth.token.cache.size", entries, Map::size)
+                .description("Verified tokens currently cached")
+                .register(meterRegistry);
+        this.hits = Counter.builder("auth.token.cache.hits")
+                .description("Requests authenticated from a cached verification")
+                .register(meterRegistry);
+        this.misses = Counter.builder("auth.token.cache.misses")
+                .description("Requests that needed a full signature verification")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param token Compact JWT
+     * @return cached claims, or null if the token was not verified recently or has expired
+     */
+    public Claims get(String token) {
+        String key = digest(token);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAtMillis() <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.claims();
+    }
+
+    /**
+     * Remember the claims of a token whose signature and expiry were just verified
+     */
+    public void put(String token, Claims claims) {
+        if (claims.getExpiration() == null) return;
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(digest(token), new Entry(claims, claims.getExpiration().getTime()));
+    }
+
+    /**
+     * Drop every cached verification, e.g. after tokens were revoked
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAtMillis() <= now);
+        // Still full of live tokens: drop an arbitrary tenth rather than grow without bound
+        Iterator<String> it = entries.keySet().iterator();
+        int toDrop = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.ibanking.tuition.semester;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/semesters")
+@PreAuthorize("hasRole('ADMIN')")
+public class SemesterAdminController {
+
+    private final SemesterCalendar semesterCalendar;
+    private final SemesterPartitionManager partitionManager;
+
+    public SemesterAdminController(SemesterCalendar semesterCalendar, SemesterPartitionManager partitionManager) {
+        this.semesterCalendar = semesterCalendar;
+        this.partitionManager = partitionManager;
+    }
+
+    @GetMapping("/current")
+    public ResponseEntity<?> current() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("current", semesterCalendar.current());
+        body.put("next", semesterCalendar.next());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Detach a past semester's partitions so current-semester tables and indexes stay small
+     * @param semester Semester code
+     * @return per table, whether a partition was detached
+     */
+    @PostMapping("/{semester}/detach")
+    public ResponseEntity<?> detach(@PathVariable("semester") String semester) {
+        Map<String, Object> detached = new LinkedHashMap<>();
+        try {
+            for (String table : SemesterPartitionManager.PARTITIONED_TABLES) {
+                detached.put(table, partitionManager.detachPartition(table, semester));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+        return ResponseEntity.ok(Map.of("semester", semester, "detached", detached));
+    }
+}
@@ -0,0 +1,90 @@
+package com.ibanking.tuition.semester;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Semester codes of the academic calendar, {@code HK<term>-<yy><yy+1>}: HK1 runs September to
+ * January, HK2 February to June and HK3 (summer) July to August, so HK1-2526 starts in September
+ * 2025. {@code app.semester.current} pins the current semester, e.g. to the seeded one.
+ */
+@Component
+public class SemesterCalendar {
+
+    private static final Pattern CODE = Pattern.compile("HK([1-3])-(\\d{2})(\\d{2})");
+
+    private final String pinned;
+    private final ZoneId zone;
+
+    public SemesterCalendar(@Value("${app.semester.current:}") String pinned,
+                            @Value("${app.semester.zone}") String zone) {
+        this.pinned = pinned == null ? "" : pinned.trim();
+        this.zone = ZoneId.of(zone);
+    }
+
+    /**
+     * @return the semester tuition is currently paid for
+     */
+    public String current() {
+        return !pinned.isEmpty() ? pinned : semesterOf(LocalDate.now(zone));
+    }
+
+    /**
+     * @return the semester after the current one, or null if the current code is not a calendar code
+     */
+    public String next() {
+        return following(current());
+    }
+
+    /**
+     * @param date A date
+     * @return the semester the date falls in
+     */
+    public static String semesterOf(LocalDate date) {
+        int month = date.getMonthValue();
+        int term;
+        int startYear;
+        if (month >= 9) {
+            term = 1;
+            startYear = date.getYear();
+        } else if (month == 1) {
+            term = 1;
+            startYear = date.getYear() - 1;
+        } else if (month <= 6) {
+            term = 2;
+            startYear = date.getYear() - 1;
+        } else {
+            term = 3;
+            startYear = date.getYear() - 1;
+        }
+        return code(term, startYear % 100);
+    }
+
+    /**
+     * @param semester A semester code
+     * @return the semester after it, or null if the code is not a calendar code
+     */
+    public static String following(String semester) {
+        Matcher m = CODE.matcher(semester);
+        if (!m.matches()) return null;
+        int term = Integer.parseInt(m.group(1));
+        int startYear = Integer.parseInt(m.group(2));
+        return term < 3 ? code(term + 1, startYear) : code(1, (startYear + 1) % 100);
+    }
+
+    /**
+     * @return whether the code has the calendar's format
+     */
+    public static boolean isCalendarCode(String semester) {
+        return semester != null && CODE.matcher(semester).matches();
+    }
+
+    private static String code(int term, int startYear) {
+        return String.format("HK%d-%02d%02d", term, startYear, (startYear + 1) % 100);
+    }
+}
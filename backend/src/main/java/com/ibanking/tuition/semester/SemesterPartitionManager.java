@@ -0,0 +1,136 @@
+package com.ibanking.tuition.semester;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps a partition per semester in the semester-partitioned tables. The current and next
+ * semester's partitions are created ahead of time, on startup and daily. Rows written for a
+ * semester before its partition existed sit in the default partition and are moved into the new
+ * partition as it is attached. Old semesters can be detached, which is a catalog change only;
+ * the detached table keeps its rows for archiving or dropping.
+ */
+@Component
+public class SemesterPartitionManager {
+
+    public static final List<String> PARTITIONED_TABLES = List.of("student_tuition", "payment_transactions");
+
+    // Serializes partition changes across nodes; the value is arbitrary but fixed
+    private static final long PARTITION_LOCK = 0x5e3e57e7L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SemesterCalendar semesterCalendar;
+
+    public SemesterPartitionManager(JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    SemesterCalendar semesterCalendar) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.semesterCalendar = semesterCalendar;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureOnStartup() {
+        ensureUpcomingPartitions();
+    }
+
+    /**
+     * Create the partitions of the current and next semester if missing
+     */
+    @Scheduled(cron = "${app.semester.partitionCron}")
+    public void ensureUpcomingPartitions() {
+        List<String> semesters = new ArrayList<>();
+        semesters.add(semesterCalendar.current());
+        String next = semesterCalendar.next();
+        if (next != null) semesters.add(next);
+        for (String semester : semesters) {
+            for (String table : PARTITIONED_TABLES) {
+                try {
+                    if (ensurePartition(table, semester)) {
+                        System.out.println("Created partition " + partitionName(table, semester));
+                    }
+                } catch (Exception e) {
+                    // Rows keep landing in the default partition; retried on the next run
+                    System.err.println("Failed to create partition " + partitionName(table, semester) + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Create and attach the partition for a semester, moving its rows out of the default partition
+     * @param table One of {@link #PARTITIONED_TABLES}
+     * @param semester Semester code
+     * @return true if the partition was created, false if it already existed
+     */
+    public boolean ensurePartition(String table, String semester) {
+        requirePartitioned(table);
+        String partition = partitionName(table, semester);
+        Boolean created = transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, PARTITION_LOCK);
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition)) {
+                return false;
+            }
+            // Built detached so rows already in the default partition can be moved in before attaching
+            jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE " + table + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            jdbcTemplate.update("WITH moved AS (DELETE FROM " + table + "_default WHERE semester = ? RETURNING *) "
+                    + "INSERT INTO " + partition + " SELECT * FROM moved", semester);
+            jdbcTemplate.execute("ALTER TABLE " + table + " ATTACH PARTITION " + partition
+                    + " FOR VALUES IN (" + literal(semester) + ")");
+            return true;
+        });
+        return Boolean.TRUE.equals(created);
+    }
+
+    /**
+     * Detach a past semester's partition from its table. Its rows no longer appear in queries
+     * but stay in the detached table.
+     * @param table One of {@link #PARTITIONED_TABLES}
+     * @param semester Semester code; never the current or next semester
+     * @return true if a partition was detached, false if there was none
+     */
+    public boolean detachPartition(String table, String semester) {
+        requirePartitioned(table);
+        if (semester.equals(semesterCalendar.current()) || semester.equals(semesterCalendar.next())) {
+            throw new IllegalArgumentException("Cannot detach the current or next semester");
+        }
+        String partition = partitionName(table, semester);
+        Boolean detached = transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, PARTITION_LOCK);
+            Boolean attached = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = to_regclass(?) AND inhparent = to_regclass(?))",
+                    Boolean.class, partition, table);
+            if (!attached) return false;
+            jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+            return true;
+        });
+        return Boolean.TRUE.equals(detached);
+    }
+
+    /**
+     * Same naming as the {@code semester_partition_name} SQL function of the V2 migration
+     */
+    public static String partitionName(String table, String semester) {
+        return table + "_" + semester.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_");
+    }
+
+    private static void requirePartitioned(String table) {
+        if (!PARTITIONED_TABLES.contains(table)) {
+            throw new IllegalArgumentException("Not a semester-partitioned table: " + table);
+        }
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -1,11 +0,0 @@
-package com.ibanking.tuition.tuition;
-
-import java.time.LocalDate;
-
-public class SemesterUtil {
-    public static String currentSemester() {
-        return "HK1-2526";
-    }
-}
-
-
@@ -5,7 +5,9 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "student_tuition")
+@Table(name = "student_tuition", uniqueConstraints =
+        // One bill per student per semester; also the conflict target of roster imports
+        @UniqueConstraint(name = "uk_student_tuition_student_semester", columnNames = {"student_id", "semester"}))
 public class StudentTuition {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -1,12 +1,33 @@
 package com.ibanking.tuition.tuition;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface StudentTuitionRepository extends JpaRepository<StudentTuition, Long> {
     Optional<StudentTuition> findByStudentIdAndSemesterAndPaidIsFalse(String studentId, String semester);
     Optional<StudentTuition> findByStudentIdAndSemester(String studentId, String semester);
-}
 
+    @Query("select new com.ibanking.tuition.tuition.TuitionRow(t.studentId, t.studentName, t.semester, t.amount, t.paid) " +
+           "from StudentTuition t where t.semester = :semester")
+    List<TuitionRow> findRowsBySemester(@Param("semester") String semester);
+
+    @Query("select new com.ibanking.tuition.tuition.TuitionRow(t.studentId, t.studentName, t.semester, t.amount, t.paid) " +
+           "from StudentTuition t where t.semester = :semester and t.studentId in :studentIds")
+    List<TuitionRow> findRowsBySemesterAndStudentIdIn(@Param("semester") String semester,
+                                                      @Param("studentIds") Collection<String> studentIds);
 
+    // Mark paid only if still unpaid; returns 0 when someone else already paid it
+    @Modifying
+    @Query("update StudentTuition t set t.paid = true, t.paidDate = :paidDate, t.version = t.version + 1 " +
+           "where t.studentId = :studentId and t.semester = :semester and t.paid = false")
+    int markPaidIfUnpaid(@Param("studentId") String studentId,
+                         @Param("semester") String semester,
+                         @Param("paidDate") LocalDate paidDate);
+}
@@ -1,50 +1,141 @@
 package com.ibanking.tuition.tuition;
 
+import com.ibanking.tuition.semester.SemesterCalendar;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/tuition")
 public class TuitionController {
 
     private final StudentTuitionRepository studentTuitionRepository;
+    private final TuitionIndex tuitionIndex;
+    private final SemesterCalendar semesterCalendar;
+    private final Timer batchTimer;
+    private final DistributionSummary batchSize;
 
-    public TuitionController(StudentTuitionRepository studentTuitionRepository) {
+    private static final int MAX_BATCH = 300;
+
+    public TuitionController(StudentTuitionRepository studentTuitionRepository, TuitionIndex tuitionIndex,
+                             SemesterCalendar semesterCalendar, MeterRegistry meterRegistry) {
         this.studentTuitionRepository = studentTuitionRepository;
+        this.tuitionIndex = tuitionIndex;
+        this.semesterCalendar = semesterCalendar;
+        this.batchTimer = Timer.builder("tuition.lookup.batch")
+                .description("Time to resolve a batch tuition lookup")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("tuition.lookup.batch.size")
+                .description("Student IDs per batch tuition lookup")
+                .register(meterRegistry);
     }
 
     @GetMapping("/lookup")
     public ResponseEntity<?> lookup(@RequestParam("studentId") @Pattern(regexp = "^.{8}$") String studentId) {
-        String currentSemester = SemesterUtil.currentSemester();
+        String currentSemester = semesterCalendar.current();
         String normalized = studentId.trim().toUpperCase();
+        // Served from memory; the database is only asked while the index is not loaded
+        TuitionIndex.Lookup indexed = tuitionIndex.lookup(normalized, currentSemester);
+        if (indexed.answered()) {
+            TuitionIndex.Entry e = indexed.entry();
+            return e != null
+                    ? tuitionResponse(e.studentId(), e.studentName(), e.semester(), e.amount(), e.paid())
+                    : ResponseEntity.status(404).body(Map.of("message", "Student not found"));
+        }
         return studentTuitionRepository.findByStudentIdAndSemester(normalized, currentSemester)
-                .<ResponseEntity<?>>map(t -> {
-                    if (t.isPaid()) {
-                        return ResponseEntity.ok(Map.of(
-                                "studentId", t.getStudentId(),
-                                "studentName", t.getStudentName(),
-                                "semester", t.getSemester(),
-                                "amount", java.math.BigDecimal.ZERO,
-                                "paid", true
-                        ));
-                    }
-                    return ResponseEntity.ok(Map.of(
-                            "studentId", t.getStudentId(),
-                            "studentName", t.getStudentName(),
-                            "semester", t.getSemester(),
-                            "amount", t.getAmount(),
-                            "paid", false
-                    ));
-                })
+                .<ResponseEntity<?>>map(t -> tuitionResponse(t.getStudentId(), t.getStudentName(), t.getSemester(), t.getAmount(), t.isPaid()))
                 .orElseGet(() -> ResponseEntity.status(404).body(Map.of("message", "Student not found")));
     }
-}
 
+    /**
+     * Look up many students at once. IDs are answered from the in-memory index where possible and
+     * the rest with a single IN query; results come back in request order, one per requested ID.
+     * @param request Up to {@value #MAX_BATCH} student IDs
+     * @return per-ID found/paid status
+     */
+    @PostMapping("/lookup/batch")
+    public ResponseEntity<?> lookupBatch(@Valid @RequestBody BatchLookupRequest request) {
+        long started = System.nanoTime();
+        String currentSemester = semesterCalendar.current();
+
+        Map<String, Map<String, Object>> resolved = new HashMap<>();
+        Set<String> toQuery = new LinkedHashSet<>();
+        for (String studentId : request.studentIds()) {
+            String normalized = normalize(studentId);
+            if (normalized.length() != 8 || resolved.containsKey(normalized)) continue;
+            TuitionIndex.Lookup indexed = tuitionIndex.lookup(normalized, currentSemester);
+            if (!indexed.answered()) {
+                toQuery.add(normalized);
+            } else if (indexed.entry() != null) {
+                TuitionIndex.Entry e = indexed.entry();
+                resolved.put(normalized, batchResult(e.studentId(), e.studentName(), e.semester(), e.amount(), e.paid()));
+            }
+        }
+        if (!toQuery.isEmpty()) {
+            for (TuitionRow row : studentTuitionRepository.findRowsBySemesterAndStudentIdIn(currentSemester, toQuery)) {
+                resolved.put(row.studentId(), batchResult(row.studentId(), row.studentName(), row.semester(), row.amount(), row.paid()));
+            }
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(request.studentIds().size());
+        for (String studentId : request.studentIds()) {
+            String normalized = normalize(studentId);
+            Map<String, Object> result = resolved.get(normalized);
+            results.add(result != null ? result : Map.of("studentId", normalized, "found", false));
+        }
+
+        batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        batchSize.record(request.studentIds().size());
+        return ResponseEntity.ok(Map.of("semester", currentSemester, "results", results));
+    }
+
+    public record BatchLookupRequest(@NotEmpty @Size(max = MAX_BATCH) List<String> studentIds) {}
 
+    private static String normalize(String studentId) {
+        return studentId == null ? "" : studentId.trim().toUpperCase();
+    }
+
+    private static Map<String, Object> batchResult(String studentId, String studentName, String semester,
+                                                   java.math.BigDecimal amount, boolean paid) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("studentId", studentId);
+        result.put("found", true);
+        result.put("studentName", studentName);
+        result.put("semester", semester);
+        result.put("amount", paid ? java.math.BigDecimal.ZERO : amount);
+        result.put("paid", paid);
+        return result;
+    }
+
+    private static ResponseEntity<?> tuitionResponse(String studentId, String studentName, String semester,
+                                                     java.math.BigDecimal amount, boolean paid) {
+        return ResponseEntity.ok(Map.of(
+                "studentId", studentId,
+                "studentName", studentName,
+                "semester", semester,
+                "amount", paid ? java.math.BigDecimal.ZERO : amount,
+                "paid", paid
+        ));
+    }
+}
@@ -0,0 +1,42 @@
+package com.ibanking.tuition.tuition;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/tuition")
+public class TuitionImportController {
+
+    private final TuitionImportService tuitionImportService;
+
+    public TuitionImportController(TuitionImportService tuitionImportService) {
+        this.tuitionImportService = tuitionImportService;
+    }
+
+    /**
+     * Import a roster CSV sent as the raw request body (e.g. {@code Content-Type: text/csv}).
+     * The body is streamed straight into the staging table, never held in memory.
+     * @param body CSV content
+     * @param skipInvalid Apply valid lines even if some lines are invalid
+     * @return the import report; 422 if the import was rejected
+     */
+    @PostMapping("/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> importRoster(InputStream body,
+                                          @RequestParam(value = "skipInvalid", defaultValue = "false") boolean skipInvalid) {
+        try {
+            TuitionImportService.ImportReport report = tuitionImportService.importCsv(body, skipInvalid);
+            return ResponseEntity.status(report.committed() ? 200 : 422).body(report);
+        } catch (IOException e) {
+            return ResponseEntity.status(400).body(Map.of("message", "Failed to read upload: " + e.getMessage()));
+        }
+    }
+}
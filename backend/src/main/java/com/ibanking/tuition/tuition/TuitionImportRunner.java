@@ -0,0 +1,46 @@
+package com.ibanking.tuition.tuition;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Imports a roster file from the command line, e.g.
+ * {@code --spring.profiles.active=tuition-import --spring.main.web-application-type=none
+ * --app.tuition.import.file=roster.csv [--app.tuition.import.skipInvalid=true]}.
+ * Fails startup if the import is rejected.
+ */
+@Component
+@Profile("tuition-import")
+public class TuitionImportRunner implements CommandLineRunner {
+
+    private final TuitionImportService tuitionImportService;
+    private final Path file;
+    private final boolean skipInvalid;
+
+    public TuitionImportRunner(TuitionImportService tuitionImportService,
+                               @Value("${app.tuition.import.file}") String file,
+                               @Value("${app.tuition.import.skipInvalid:false}") boolean skipInvalid) {
+        this.tuitionImportService = tuitionImportService;
+        this.file = Path.of(file);
+        this.skipInvalid = skipInvalid;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        System.out.println("Importing tuition roster from " + file.toAbsolutePath());
+        TuitionImportService.ImportReport report;
+        try (InputStream in = Files.newInputStream(file)) {
+            report = tuitionImportService.importCsv(in, skipInvalid);
+        }
+        report.errors().forEach(error -> System.out.println("  " + error));
+        if (!report.committed()) {
+            throw new IllegalStateException("Tuition import rejected: " + report.rowsStaged() + " valid, " + report.invalid() + " invalid lines");
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.ibanking.tuition.tuition;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads a semester roster from CSV ({@code studentId,studentName,semester,amount}, optional header
+ * line). Lines are validated as they are read and sent in JDBC batches to a temporary staging
+ * table, so memory stays constant whatever the file size; one set-based upsert then merges the
+ * staging table into {@code student_tuition}. The whole import is a single transaction: it either
+ * applies completely or not at all. Tuitions already paid are never changed.
+ */
+@Service
+public class TuitionImportService {
+
+    private static final String CREATE_STAGING =
+            "CREATE TEMP TABLE tuition_import (" +
+            "line bigint NOT NULL, student_id varchar(8) NOT NULL, student_name varchar(255) NOT NULL, " +
+            "semester varchar(255) NOT NULL, amount numeric(18,2) NOT NULL) ON COMMIT DROP";
+
+    private static final String INSERT_STAGING =
+            "INSERT INTO tuition_import (line, student_id, student_name, semester, amount) VALUES (?, ?, ?, ?, ?)";
+
+    // Last line wins for duplicate IDs; unchanged rows are not rewritten
+    private static final String MERGE =
+            "WITH merged AS (" +
+            "  INSERT INTO student_tuition (student_id, student_name, semester, amount, paid, version) " +
+            "  SELECT DISTINCT ON (student_id, semester) student_id, student_name, semester, amount, false, 0 " +
+            "  FROM tuition_import ORDER BY student_id, semester, line DESC " +
+            "  ON CONFLICT (student_id, semester) DO UPDATE " +
+            "  SET student_name = EXCLUDED.student_name, amount = EXCLUDED.amount, version = student_tuition.version + 1 " +
+            "  WHERE NOT student_tuition.paid " +
+            "  AND (student_tuition.student_name, student_tuition.amount) IS DISTINCT FROM (EXCLUDED.student_name, EXCLUDED.amount) " +
+            "  RETURNING (xmax = 0) AS inserted) " +
+            "SELECT count(*) FILTER (WHERE inserted) AS inserted, count(*) FILTER (WHERE NOT inserted) AS updated FROM merged";
+
+    private static final long PROGRESS_EVERY = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TuitionIndex tuitionIndex;
+    private final int batchSize;
+    private final int maxReportedErrors;
+
+    /**
+     * Outcome of an import
+     * @param linesRead Data lines read (header excluded)
+     * @param rowsStaged Valid lines loaded into the staging table
+     * @param inserted New tuition records
+     * @param updated Unpaid records whose name or amount changed
+     * @param unchanged Distinct records left as they were (identical, or already paid)
+     * @param invalid Lines that failed validation
+     * @param errors The first invalid lines with reasons
+     * @param committed Whether the import was applied
+     * @param millis Total time taken
+     * @param rowsPerSecond Lines processed per second
+     */
+    public record ImportReport(long linesRead, long rowsStaged, long inserted, long updated, long unchanged,
+                               long invalid, List<String> errors, boolean committed, long millis, long rowsPerSecond) {}
+
+    public TuitionImportService(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                TuitionIndex tuitionIndex,
+                                @Value("${app.tuition.import.batchSize}") int batchSize,
+                                @Value("${app.tuition.import.maxReportedErrors}") int maxReportedErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tuitionIndex = tuitionIndex;
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Import a roster
+     * @param csv CSV content, UTF-8
+     * @param skipInvalid Apply the valid lines even if some are invalid; otherwise any invalid line rejects the import
+     * @return the report; {@link ImportReport#committed()} tells whether anything was applied
+     */
+    public ImportReport importCsv(InputStream csv, boolean skipInvalid) throws IOException {
+        long started = System.nanoTime();
+        try {
+            ImportReport report = transactionTemplate.execute(status -> {
+                jdbcTemplate.execute(CREATE_STAGING);
+                Staging staging = stage(csv);
+
+                if (staging.invalid > 0 && !skipInvalid || staging.rows == 0) {
+                    status.setRollbackOnly();
+                    return report(staging, 0, 0, 0, false, started);
+                }
+
+                // Temp tables are never auto-analyzed; give the planner real row counts for the merge
+                jdbcTemplate.execute("ANALYZE tuition_import");
+                Long distinct = jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM (SELECT DISTINCT student_id, semester FROM tuition_import) d", Long.class);
+                Map<String, Object> merged = jdbcTemplate.queryForMap(MERGE);
+                long inserted = ((Number) merged.get("inserted")).longValue();
+                long updated = ((Number) merged.get("updated")).longValue();
+                return report(staging, inserted, updated, distinct - inserted - updated, true, started);
+            });
+            if (report.committed()) {
+                tuitionIndex.reload();
+            }
+            System.out.println("Tuition import " + (report.committed() ? "applied" : "rejected") + ": " + report);
+            return report;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class Staging {
+        long lines;
+        long rows;
+        long invalid;
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private Staging stage(InputStream csv) {
+        Staging staging = new Staging();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        long started = System.nanoTime();
+        long lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) line = line.substring(1);
+                if (line.isBlank()) continue;
+                List<String> fields = parseCsvLine(line);
+                if (lineNumber == 1 && fields.get(0).trim().equalsIgnoreCase("studentId")) continue;
+                staging.lines++;
+
+                Object[] row = new Object[5];
+                String error = validate(fields, row);
+                if (error != null) {
+                    staging.invalid++;
+                    if (staging.errors.size() < maxReportedErrors) {
+                        staging.errors.add("line " + lineNumber + ": " + error);
+                    }
+                    continue;
+                }
+                row[0] = lineNumber;
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    flush(batch, staging);
+                    if (staging.rows % PROGRESS_EVERY < batchSize) {
+                        logProgress(staging, started);
+                    }
+                }
+            }
+            flush(batch, staging);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return staging;
+    }
+
+    private void flush(List<Object[]> batch, Staging staging) {
+        if (batch.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_STAGING, batch);
+        staging.rows += batch.size();
+        batch.clear();
+    }
+
+    private static void logProgress(Staging staging, long started) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        System.out.println("Tuition import: staged " + staging.rows + " rows ("
+                + staging.rows * 1000 / elapsedMillis + " rows/s), " + staging.invalid + " invalid");
+    }
+
+    private static ImportReport report(Staging staging, long inserted, long updated, long unchanged,
+                                       boolean committed, long started) {
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        return new ImportReport(staging.lines, staging.rows, inserted, updated, unchanged,
+                staging.invalid, List.copyOf(staging.errors), committed, millis, staging.lines * 1000 / millis);
+    }
+
+    /**
+     * Validate one line and fill in the staging row (all but the line number)
+     * @return the reason the line is invalid, or null
+     */
+    private static String validate(List<String> fields, Object[] row) {
+        if (fields.size() != 4) return "expected 4 columns, found " + fields.size();
+        // Same normalization as the lookup endpoints
+        String studentId = fields.get(0).trim().toUpperCase();
+        String studentName = fields.get(1).trim();
+        String semester = fields.get(2).trim();
+        if (studentId.length() != 8) return "studentId must be 8 characters";
+        if (studentName.isEmpty() || studentName.length() > 255) return "studentName must be 1-255 characters";
+        if (semester.isEmpty() || semester.length() > 255) return "semester must be 1-255 characters";
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(fields.get(3).trim());
+        } catch (NumberFormatException e) {
+            return "amount is not a number";
+        }
+        if (amount.signum() < 0) return "amount must not be negative";
+        if (amount.scale() > 2 || amount.precision() - amount.scale() > 16) return "amount does not fit numeric(18,2)";
+        row[1] = studentId;
+        row[2] = studentName;
+        row[3] = semester;
+        row[4] = amount;
+        return null;
+    }
+
+    /**
+     * Split a CSV line; fields may be double-quoted, with "" for a literal quote
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
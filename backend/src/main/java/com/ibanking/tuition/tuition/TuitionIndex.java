@@ -0,0 +1,345 @@
+package com.ibanking.tuition.tuition;
+
+import com.ibanking.tuition.semester.SemesterCalendar;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The current semester's tuition roster held in memory so the public lookup never reaches the
+ * database. Student IDs are eight ASCII characters and are packed into a {@code long}, which keys
+ * an open-addressing table of primitive longs; a Bloom filter in front answers most unknown IDs
+ * without probing the table. The roster is loaded in one query on startup and on a slow
+ * schedule, and payments mark rows paid on every node through {@link #PAID_CHANNEL}.
+ */
+@Component
+public class TuitionIndex implements MessageListener {
+
+    public static final String PAID_CHANNEL = "tuition:paid";
+
+    private final StudentTuitionRepository studentTuitionRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final SemesterCalendar semesterCalendar;
+    private final Counter hits;
+    private final Counter negatives;
+    private final Counter fallbacks;
+
+    private volatile Snapshot snapshot;
+    private volatile boolean reloading;
+    // Paid marks that may have been missed by a roster being loaded concurrently
+    private final Queue<Long> paidDuringReload = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A roster entry as returned by the lookup
+     */
+    public record Entry(String studentId, String studentName, String semester, BigDecimal amount, boolean paid) {}
+
+    /**
+     * @param answered false if the index cannot answer and the database must be asked
+     * @param entry the entry, or null if the student has no tuition this semester
+     */
+    public record Lookup(boolean answered, Entry entry) {
+        static final Lookup UNAVAILABLE = new Lookup(false, null);
+        static final Lookup ABSENT = new Lookup(true, null);
+    }
+
+    public TuitionIndex(StudentTuitionRepository studentTuitionRepository,
+                        StringRedisTemplate redisTemplate,
+                        SemesterCalendar semesterCalendar,
+                        RedisMessageListenerContainer container,
+                        MeterRegistry meterRegistry) {
+        this.studentTuitionRepository = studentTuitionRepository;
+        this.redisTemplate = redisTemplate;
+        this.semesterCalendar = semesterCalendar;
+        container.addMessageListener(this, new ChannelTopic(PAID_CHANNEL));
+        Gauge.builder("tuition.index.size", this, index -> index.snapshot != null ? index.snapshot.size : 0)
+                .description("Tuition records held by the in-memory lookup index")
+                .register(meterRegistry);
+        this.hits = Counter.builder("tuition.index.lookups").tag("result", "hit")
+                .description("Tuition lookups answered by the in-memory index")
+                .register(meterRegistry);
+        this.negatives = Counter.builder("tuition.index.lookups").tag("result", "absent")
+                .description("Tuition lookups answered by the in-memory index")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("tuition.index.lookups").tag("result", "fallback")
+                .description("Tuition lookups answered by the in-memory index")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        reload();
+    }
+
+    /**
+     * Catches rows added or changed outside the payment flow, and semester rollover
+     */
+    @Scheduled(fixedDelayString = "${app.tuition.index.reloadMillis}", initialDelayString = "${app.tuition.index.reloadMillis}")
+    public void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * Replace the index with the current semester's roster, read in one query
+     */
+    public synchronized void reload() {
+        String semester = semesterCalendar.current();
+        reloading = true;
+        paidDuringReload.clear();
+        try {
+            List<TuitionRow> rows = studentTuitionRepository.findRowsBySemester(semester);
+            Snapshot fresh = new Snapshot(semester, rows);
+            applyPaidDuringReload(fresh);
+            snapshot = fresh;
+            System.out.println("Tuition index loaded " + fresh.size + " records for " + semester);
+        } catch (Exception e) {
+            // Keep serving the previous roster; lookups fall back to the database if there is none
+            System.err.println("Failed to load tuition index: " + e.getMessage());
+        } finally {
+            reloading = false;
+            Snapshot current = snapshot;
+            if (current != null) applyPaidDuringReload(current);
+        }
+    }
+
+    /**
+     * @param studentId Normalized (trimmed, upper-case) student ID
+     * @param semester Semester being looked up
+     * @return the answer, or {@link Lookup#answered()} false if the database must be asked
+     */
+    public Lookup lookup(String studentId, String semester) {
+        Snapshot current = snapshot;
+        if (current == null || !current.semester.equals(semester)) {
+            fallbacks.increment();
+            return Lookup.UNAVAILABLE;
+        }
+        long key = pack(studentId);
+        if (key == 0L) {
+            // Only rows with packable IDs are indexed; if every row was, this ID cannot exist
+            if (current.complete) {
+                negatives.increment();
+                return Lookup.ABSENT;
+            }
+            fallbacks.increment();
+            return Lookup.UNAVAILABLE;
+        }
+        Entry entry = current.find(key);
+        if (entry == null) {
+            negatives.increment();
+            return Lookup.ABSENT;
+        }
+        hits.increment();
+        return new Lookup(true, entry);
+    }
+
+    /**
+     * Record that a tuition was paid, on every node, once the surrounding transaction commits
+     * @param studentId Student ID
+     * @param semester Semester of the tuition
+     */
+    public void markPaid(String studentId, String semester) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishPaid(studentId, semester);
+                }
+            });
+        } else {
+            publishPaid(studentId, semester);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep < 0) return;
+        applyPaid(body.substring(sep + 1), body.substring(0, sep));
+    }
+
+    private void publishPaid(String studentId, String semester) {
+        // Apply locally first so this node is correct even if the broadcast is lost
+        applyPaid(studentId, semester);
+        try {
+            redisTemplate.convertAndSend(PAID_CHANNEL, semester + "|" + studentId);
+        } catch (Exception e) {
+            // Other nodes pick it up on their next reload
+            System.err.println("Failed to publish paid tuition " + studentId + ": " + e.getMessage());
+        }
+    }
+
+    private void applyPaid(String studentId, String semester) {
+        long key = pack(studentId);
+        if (key == 0L) return;
+        Snapshot current = snapshot;
+        if (current != null && current.semester.equals(semester)) {
+            current.markPaid(key);
+        }
+        if (reloading && semester.equals(semesterCalendar.current())) {
+            paidDuringReload.add(key);
+        }
+    }
+
+    private void applyPaidDuringReload(Snapshot target) {
+        for (Long key : paidDuringReload) {
+            target.markPaid(key);
+        }
+    }
+
+    /**
+     * Pack an eight-character printable ASCII ID into a long, one byte per character
+     * @return the packed ID, or 0 if the ID cannot be packed
+     */
+    static long pack(String studentId) {
+        if (studentId == null || studentId.length() != 8) return 0L;
+        long key = 0L;
+        for (int i = 0; i < 8; i++) {
+            char c = studentId.charAt(i);
+            if (c <= ' ' || c > '~') return 0L;
+            key = (key << 8) | c;
+        }
+        return key;
+    }
+
+    static String unpack(long key) {
+        char[] chars = new char[8];
+        for (int i = 7; i >= 0; i--) {
+            chars[i] = (char) (key & 0xFF);
+            key >>>= 8;
+        }
+        return new String(chars);
+    }
+
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * One semester's roster. The table is sized to at most half full and never changes after
+     * construction except for the paid bits, so lookups need no locking.
+     */
+    static final class Snapshot {
+        private static final int BLOOM_HASHES = 7;
+
+        final String semester;
+        final int size;
+        // True if every row had a packable ID, so unpackable lookups are known misses
+        final boolean complete;
+
+        private final long[] keys;
+        private final String[] names;
+        private final BigDecimal[] amounts;
+        private final AtomicLongArray paid;
+        private final int mask;
+        private final long[] bloom;
+        private final int bloomMask;
+
+        Snapshot(String semester, List<TuitionRow> rows) {
+            this.semester = semester;
+            int capacity = Integer.highestOneBit(Math.max(16, rows.size() * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.names = new String[capacity];
+            this.amounts = new BigDecimal[capacity];
+            this.paid = new AtomicLongArray((capacity + 63) >>> 6);
+            this.mask = capacity - 1;
+            // About ten bits per entry keeps false positives near 1% with seven hashes
+            int bloomBits = Integer.highestOneBit(Math.max(64, rows.size() * 10 - 1)) << 1;
+            this.bloom = new long[bloomBits >>> 6];
+            this.bloomMask = bloomBits - 1;
+
+            int count = 0;
+            boolean allPacked = true;
+            for (TuitionRow row : rows) {
+                long key = pack(row.studentId());
+                if (key == 0L) {
+                    allPacked = false;
+                    continue;
+                }
+                int slot = slotFor(key);
+                if (keys[slot] == 0L) count++;
+                keys[slot] = key;
+                names[slot] = row.studentName();
+                amounts[slot] = row.amount();
+                if (row.paid()) setPaid(slot);
+                addToBloom(key);
+            }
+            this.size = count;
+            this.complete = allPacked;
+        }
+
+        Entry find(long key) {
+            if (!mightContain(key)) return null;
+            int slot = slotFor(key);
+            if (keys[slot] != key) return null;
+            return new Entry(unpack(key), names[slot], semester, amounts[slot], isPaid(slot));
+        }
+
+        void markPaid(long key) {
+            int slot = slotFor(key);
+            if (keys[slot] == key) setPaid(slot);
+        }
+
+        /**
+         * Slot holding the key, or the empty slot where it would go
+         */
+        int slotFor(long key) {
+            int slot = (int) mix(key) & mask;
+            while (keys[slot] != 0L && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private boolean isPaid(int slot) {
+            return (paid.get(slot >>> 6) & (1L << slot)) != 0;
+        }
+
+        private void setPaid(int slot) {
+            long bit = 1L << slot;
+            paid.getAndAccumulate(slot >>> 6, bit, (word, b) -> word | b);
+        }
+
+        private void addToBloom(long key) {
+            long h1 = mix(key);
+            long h2 = mix(h1) | 1L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (int) (h1 + i * h2) & bloomMask;
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long key) {
+            long h1 = mix(key);
+            long h2 = mix(h1) | 1L;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (int) (h1 + i * h2) & bloomMask;
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+    }
+}
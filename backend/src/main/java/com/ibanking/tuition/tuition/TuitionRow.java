@@ -0,0 +1,14 @@
+package com.ibanking.tuition.tuition;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only view of a tuition record for bulk loading and lookups, selected directly by JPQL
+ */
+public record TuitionRow(
+        String studentId,
+        String studentName,
+        String semester,
+        BigDecimal amount,
+        boolean paid
+) {}
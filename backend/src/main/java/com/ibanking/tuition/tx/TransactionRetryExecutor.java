@@ -0,0 +1,156 @@
+package com.ibanking.tuition.tx;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs a unit of work in its own transaction and transparently re-runs it when the database
+ * reports a retryable conflict (serialization failure, deadlock, optimistic-lock clash).
+ * Retries use full-jitter exponential backoff and draw from a shared retry budget that is
+ * refilled by successful first attempts, so a conflict storm cannot multiply load indefinitely.
+ */
+@Component
+public class TransactionRetryExecutor {
+
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final String DEADLOCK_DETECTED = "40P01";
+
+    private final Map<Isolation, TransactionTemplate> templates = new EnumMap<>(Isolation.class);
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    // Budget kept in thousandths of a retry so fractional deposits need no locking
+    private final AtomicLong budgetMillis;
+    private final long budgetDepositMillis;
+    private final long budgetCapMillis;
+
+    public TransactionRetryExecutor(PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.tx.retry.maxAttempts}") int maxAttempts,
+                                    @Value("${app.tx.retry.initialBackoffMillis}") long initialBackoffMillis,
+                                    @Value("${app.tx.retry.maxBackoffMillis}") long maxBackoffMillis,
+                                    @Value("${app.tx.retry.budgetRatio}") double budgetRatio,
+                                    @Value("${app.tx.retry.budgetMax}") int budgetMax) {
+        for (Isolation isolation : Isolation.values()) {
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setIsolationLevel(isolation.value());
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+            templates.put(isolation, template);
+        }
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.budgetDepositMillis = Math.round(budgetRatio * 1000);
+        this.budgetCapMillis = budgetMax * 1000L;
+        this.budgetMillis = new AtomicLong(budgetCapMillis);
+    }
+
+    /**
+     * Execute work in a new transaction, retrying on retryable database conflicts
+     * @param name Operation name used as metric tag
+     * @param isolation Isolation level for each attempt
+     * @param work Unit of work; must be safe to run more than once
+     * @return result of the successful attempt
+     */
+    public <T> T execute(String name, Isolation isolation, Supplier<T> work) {
+        TransactionTemplate template = templates.get(isolation);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // Retrying inside someone else's transaction cannot help; let the outer unit decide
+            return template.execute(status -> work.get());
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = template.execute(status -> work.get());
+                if (attempt == 1) {
+                    depositBudget();
+                } else {
+                    counter("tx.retry.success.after.retry", name).increment();
+                }
+                return result;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    counter("tx.retry.gave.up", name).increment();
+                    throw e;
+                }
+                if (!withdrawBudget()) {
+                    counter("tx.retry.budget.exhausted", name).increment();
+                    throw e;
+                }
+                counter("tx.retry.attempts", name).increment();
+                if (!backoff(attempt)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the exception (or one of its causes) is a conflict that a fresh
+     *         transaction may not hit again
+     */
+    public static boolean isRetryable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConcurrencyFailureException || t instanceof OptimisticLockException) {
+                return true;
+            }
+            if (t instanceof SQLException sql
+                    && (SERIALIZATION_FAILURE.equals(sql.getSQLState()) || DEADLOCK_DETECTED.equals(sql.getSQLState()))) {
+                return true;
+            }
+            if (t.getCause() == t) break;
+        }
+        return false;
+    }
+
+    // Full jitter: sleep a random time between 0 and the exponential ceiling
+    private boolean backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 10));
+        try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void depositBudget() {
+        budgetMillis.accumulateAndGet(budgetDepositMillis, (current, add) -> Math.min(budgetCapMillis, current + add));
+    }
+
+    private boolean withdrawBudget() {
+        while (true) {
+            long current = budgetMillis.get();
+            if (current < 1000) return false;
+            if (budgetMillis.compareAndSet(current, current - 1000)) return true;
+        }
+    }
+
+    private Counter counter(String metric, String name) {
+        return Counter.builder(metric).tag("operation", name).register(meterRegistry);
+    }
+}
@@ -2,6 +2,7 @@ package com.ibanking.tuition.user;
 
 import jakarta.persistence.*;
 import java.math.BigDecimal;
+import java.util.Locale;
 
 @Entity
 @Table(name = "customers")
@@ -13,6 +14,10 @@ public class Customer {
     @Column(unique = true, nullable = false)
     private String username;
 
+    // Lower-cased username kept in sync on every write; case-insensitive lookups use its unique index
+    @Column(name = "username_normalized", unique = true, nullable = false)
+    private String usernameNormalized;
+
     @Column(nullable = false)
     private String passwordHash;
 
@@ -28,6 +33,10 @@ public class Customer {
     @Column(nullable = false, precision = 18, scale = 2)
     private BigDecimal balance;
 
+    // Grants ROLE_ADMIN (roster imports); set directly in the database
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    private boolean admin;
+
     @Version
     @Column(nullable = false)
     private Long version = 0L;
@@ -35,14 +44,26 @@ public class Customer {
     // Default constructor
     public Customer() {}
 
+    public static String normalizeUsername(String username) {
+        return username == null ? null : username.toLowerCase(Locale.ROOT);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void syncUsernameNormalized() {
+        this.usernameNormalized = normalizeUsername(username);
+    }
+
     // Getters
     public Long getId() { return id; }
     public String getUsername() { return username; }
+    public String getUsernameNormalized() { return usernameNormalized; }
     public String getPasswordHash() { return passwordHash; }
     public String getFullName() { return fullName; }
     public String getPhone() { return phone; }
     public String getEmail() { return email; }
     public BigDecimal getBalance() { return balance; }
+    public boolean isAdmin() { return admin; }
     public Long getVersion() { return version; }
 
     // Setters
@@ -53,6 +74,7 @@ public class Customer {
     public void setPhone(String phone) { this.phone = phone; }
     public void setEmail(String email) { this.email = email; }
     public void setBalance(BigDecimal balance) { this.balance = balance; }
+    public void setAdmin(boolean admin) { this.admin = admin; }
     public void setVersion(Long version) { this.version = version; }
 }
 
@@ -1,12 +1,31 @@
 package com.ibanking.tuition.user;
 
+import com.ibanking.tuition.auth.LoginCandidate;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
     Optional<Customer> findByUsername(String username);
-    Optional<Customer> findByUsernameIgnoreCase(String username);
-}
+    // Pass Customer.normalizeUsername(...) so the lookup hits the unique index on username_normalized
+    Optional<Customer> findByUsernameNormalized(String usernameNormalized);
 
+    // Everything login needs in one round trip: the customer plus any in-flight transaction
+    @Query("select new com.ibanking.tuition.auth.LoginCandidate(c, p) from Customer c " +
+           "left join com.ibanking.tuition.payment.PaymentTransaction p on p.payerCustomerId = c.id " +
+           "and p.status in (com.ibanking.tuition.payment.PaymentTransaction.Status.PENDING_OTP, " +
+           "com.ibanking.tuition.payment.PaymentTransaction.Status.PROCESSING) " +
+           "where c.usernameNormalized = :usernameNormalized order by p.createdAt desc")
+    List<LoginCandidate> findLoginCandidates(@Param("usernameNormalized") String usernameNormalized);
 
+    // Debit only if the balance covers the amount; returns 0 when funds are insufficient
+    @Modifying
+    @Query("update Customer c set c.balance = c.balance - :amount, c.version = c.version + 1 " +
+           "where c.id = :id and c.balance >= :amount")
+    int debitIfSufficient(@Param("id") Long id, @Param("amount") BigDecimal amount);
+}
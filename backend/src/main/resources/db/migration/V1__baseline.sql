@@ -0,0 +1,68 @@
+-- Schema as previously generated by Hibernate (ddl-auto: update). Written to be idempotent so
+-- databases created that way can run it too: missing tables are created, and columns added
+-- after the table first appeared are added if absent.
+
+CREATE TABLE IF NOT EXISTS customers (
+    id                  bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username            varchar(255)   NOT NULL UNIQUE,
+    username_normalized varchar(255)   NOT NULL,
+    password_hash       varchar(255)   NOT NULL,
+    full_name           varchar(255)   NOT NULL,
+    phone               varchar(255)   NOT NULL,
+    email               varchar(255)   NOT NULL,
+    balance             numeric(18, 2) NOT NULL,
+    admin               boolean        NOT NULL DEFAULT false,
+    version             bigint         NOT NULL
+);
+
+ALTER TABLE customers ADD COLUMN IF NOT EXISTS username_normalized varchar(255);
+ALTER TABLE customers ADD COLUMN IF NOT EXISTS admin boolean NOT NULL DEFAULT false;
+UPDATE customers SET username_normalized = lower(username) WHERE username_normalized IS NULL;
+ALTER TABLE customers ALTER COLUMN username_normalized SET NOT NULL;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_indexes
+                   WHERE tablename = 'customers' AND indexdef LIKE 'CREATE UNIQUE INDEX % (username_normalized)') THEN
+        CREATE UNIQUE INDEX uk_customers_username_normalized ON customers (username_normalized);
+    END IF;
+END $$;
+
+CREATE TABLE IF NOT EXISTS student_tuition (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    student_id   varchar(8)     NOT NULL,
+    student_name varchar(255)   NOT NULL,
+    semester     varchar(255)   NOT NULL,
+    amount       numeric(18, 2) NOT NULL,
+    paid         boolean        NOT NULL,
+    paid_date    date,
+    version      bigint         NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS payment_transactions (
+    id                bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    payer_customer_id bigint                   NOT NULL,
+    student_id        varchar(255)             NOT NULL,
+    semester          varchar(255)             NOT NULL,
+    amount            numeric(18, 2)           NOT NULL,
+    status            varchar(255)             NOT NULL
+        CHECK (status IN ('PENDING_OTP', 'SUCCESS', 'FAILED', 'EXPIRED', 'PROCESSING')),
+    created_at        timestamp(6) with time zone NOT NULL,
+    completed_at      timestamp(6) with time zone,
+    lock_id           varchar(255)             NOT NULL,
+    lock_expiry       timestamp(6) with time zone NOT NULL,
+    version           bigint                   NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id              bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    recipient       varchar(255)                NOT NULL,
+    subject         varchar(255)                NOT NULL,
+    html_body       text,
+    status          varchar(255)                NOT NULL CHECK (status IN ('PENDING', 'SENT', 'FAILED')),
+    attempts        integer                     NOT NULL,
+    created_at      timestamp(6) with time zone NOT NULL,
+    next_attempt_at timestamp(6) with time zone NOT NULL,
+    sent_at         timestamp(6) with time zone,
+    last_error      varchar(1000)
+);
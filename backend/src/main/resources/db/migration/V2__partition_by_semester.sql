@@ -0,0 +1,93 @@
+-- List-partition student_tuition and payment_transactions by semester. Every semester already
+-- present gets its own partition; rows for semesters without one land in the default partition
+-- until SemesterPartitionManager creates it. Partition names are
+-- <table>_<semester lower-cased, runs of other characters replaced by '_'>.
+-- Primary keys must include the partition key, so they become (id, semester); ids still come
+-- from one sequence per table and stay unique.
+
+CREATE FUNCTION semester_partition_name(parent text, semester text) RETURNS text
+    LANGUAGE sql IMMUTABLE AS
+$$ SELECT parent || '_' || regexp_replace(lower(semester), '[^a-z0-9]+', '_', 'g') $$;
+
+-- student_tuition
+
+ALTER TABLE student_tuition DROP CONSTRAINT IF EXISTS uk_student_tuition_student_semester;
+ALTER TABLE student_tuition DROP CONSTRAINT IF EXISTS student_tuition_pkey;
+ALTER TABLE student_tuition RENAME TO student_tuition_unpartitioned;
+
+CREATE TABLE student_tuition (
+    id           bigint         NOT NULL,
+    student_id   varchar(8)     NOT NULL,
+    student_name varchar(255)   NOT NULL,
+    semester     varchar(255)   NOT NULL,
+    amount       numeric(18, 2) NOT NULL,
+    paid         boolean        NOT NULL,
+    paid_date    date,
+    version      bigint         NOT NULL,
+    CONSTRAINT student_tuition_pkey PRIMARY KEY (id, semester),
+    CONSTRAINT uk_student_tuition_student_semester UNIQUE (student_id, semester)
+) PARTITION BY LIST (semester);
+
+CREATE TABLE student_tuition_default PARTITION OF student_tuition DEFAULT;
+
+DO $$
+DECLARE s text;
+BEGIN
+    FOR s IN SELECT DISTINCT semester FROM student_tuition_unpartitioned LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF student_tuition FOR VALUES IN (%L)',
+                       semester_partition_name('student_tuition', s), s);
+    END LOOP;
+END $$;
+
+INSERT INTO student_tuition (id, student_id, student_name, semester, amount, paid, paid_date, version)
+SELECT id, student_id, student_name, semester, amount, paid, paid_date, version FROM student_tuition_unpartitioned;
+
+DROP TABLE student_tuition_unpartitioned;
+
+CREATE SEQUENCE student_tuition_id_seq OWNED BY student_tuition.id;
+SELECT setval('student_tuition_id_seq', COALESCE((SELECT max(id) FROM student_tuition), 0) + 1, false);
+ALTER TABLE student_tuition ALTER COLUMN id SET DEFAULT nextval('student_tuition_id_seq');
+
+-- payment_transactions
+
+ALTER TABLE payment_transactions DROP CONSTRAINT IF EXISTS payment_transactions_pkey;
+ALTER TABLE payment_transactions RENAME TO payment_transactions_unpartitioned;
+
+CREATE TABLE payment_transactions (
+    id                bigint                      NOT NULL,
+    payer_customer_id bigint                      NOT NULL,
+    student_id        varchar(255)                NOT NULL,
+    semester          varchar(255)                NOT NULL,
+    amount            numeric(18, 2)              NOT NULL,
+    status            varchar(255)                NOT NULL
+        CHECK (status IN ('PENDING_OTP', 'SUCCESS', 'FAILED', 'EXPIRED', 'PROCESSING')),
+    created_at        timestamp(6) with time zone NOT NULL,
+    completed_at      timestamp(6) with time zone,
+    lock_id           varchar(255)                NOT NULL,
+    lock_expiry       timestamp(6) with time zone NOT NULL,
+    version           bigint                      NOT NULL,
+    CONSTRAINT payment_transactions_pkey PRIMARY KEY (id, semester)
+) PARTITION BY LIST (semester);
+
+CREATE TABLE payment_transactions_default PARTITION OF payment_transactions DEFAULT;
+
+DO $$
+DECLARE s text;
+BEGIN
+    FOR s IN SELECT DISTINCT semester FROM payment_transactions_unpartitioned LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF payment_transactions FOR VALUES IN (%L)',
+                       semester_partition_name('payment_transactions', s), s);
+    END LOOP;
+END $$;
+
+INSERT INTO payment_transactions (id, payer_customer_id, student_id, semester, amount, status, created_at,
+                                  completed_at, lock_id, lock_expiry, version)
+SELECT id, payer_customer_id, student_id, semester, amount, status, created_at,
+       completed_at, lock_id, lock_expiry, version
+FROM payment_transactions_unpartitioned;
+
+DROP TABLE payment_transactions_unpartitioned;
+
+CREATE SEQUENCE payment_transactions_id_seq OWNED BY payment_transactions.id;
+SELECT setval('payment_transactions_id_seq', COALESCE((SELECT max(id) FROM payment_transactions), 0) + 1, false);
+ALTER TABLE payment_transactions ALTER COLUMN id SET DEFAULT nextval('payment_transactions_id_seq');
@@ -0,0 +1,28 @@
+-- Indexes for every repository query (checked by the query plan tests in src/test).
+-- Indexes on the partitioned tables are created on each partition, including future ones.
+-- Partial indexes cover only in-flight rows and serve the queries that name those statuses
+-- literally; parameterized finders use the full indexes.
+
+-- History pages: payer's transactions newest first, keyset on (created_at, id)
+CREATE INDEX ix_payment_transactions_payer_created ON payment_transactions (payer_customer_id, created_at, id);
+
+-- Open transaction for a student's tuition (initiate, resend checks)
+CREATE INDEX ix_payment_transactions_student_semester_status ON payment_transactions (student_id, semester, status);
+
+-- Transactions by status, oldest first (startup expiry recovery)
+CREATE INDEX ix_payment_transactions_status_created ON payment_transactions (status, created_at);
+
+-- Payer's in-flight transaction at login
+CREATE INDEX ix_payment_transactions_payer_pending ON payment_transactions (payer_customer_id, status)
+    WHERE status IN ('PENDING_OTP', 'PROCESSING');
+
+-- Overdue OTP sweep
+CREATE INDEX ix_payment_transactions_pending_otp_created ON payment_transactions (created_at)
+    WHERE status = 'PENDING_OTP';
+
+-- Outbox messages waiting to be sent
+CREATE INDEX ix_email_outbox_pending_next_attempt ON email_outbox (next_attempt_at)
+    WHERE status = 'PENDING';
+
+-- student_tuition (student_id, semester) is served by uk_student_tuition_student_semester (V2).
+-- customers username and username_normalized are served by their unique indexes (V1).
@@ -0,0 +1,80 @@
+package com.ibanking.tuition;
+
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Base for repository tests that need the real schema: the Flyway migrations on a real Postgres,
+ * with each test rolled back at the end. Postgres is a Testcontainers container, or, where there
+ * is no Docker, an existing empty database given with
+ * {@code -Dtest.postgres.url=jdbc:postgresql://...} (plus {@code test.postgres.username} and
+ * {@code test.postgres.password}). Without either the tests are skipped.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@PostgresTestSupport.EnabledWithPostgres
+public abstract class PostgresTestSupport {
+
+    /** JUnit conditions are not inherited unless the annotation carrying them is */
+    @Target(ElementType.TYPE)
+    @Retention(RetentionPolicy.RUNTIME)
+    @Inherited
+    @EnabledIf(value = "com.ibanking.tuition.PostgresTestSupport#postgresAvailable",
+            disabledReason = "needs Docker or -Dtest.postgres.url")
+    @interface EnabledWithPostgres {}
+
+    private static final String EXTERNAL_URL = System.getProperty("test.postgres.url");
+
+    private static PostgreSQLContainer<?> container;
+
+    static boolean postgresAvailable() {
+        if (EXTERNAL_URL != null) return true;
+        try {
+            // isDockerAvailable() alone can answer true and fail on first use; ask the daemon
+            DockerClientFactory.instance().client().pingCmd().exec();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        if (EXTERNAL_URL != null) {
+            registry.add("spring.datasource.url", () -> EXTERNAL_URL);
+            registry.add("spring.datasource.username", () -> System.getProperty("test.postgres.username", "postgres"));
+            registry.add("spring.datasource.password", () -> System.getProperty("test.postgres.password", ""));
+            return;
+        }
+        synchronized (PostgresTestSupport.class) {
+            if (container == null) {
+                // Shared by every Postgres test class and stopped by Testcontainers when the JVM exits
+                container = new PostgreSQLContainer<>("postgres:16-alpine");
+                container.start();
+            }
+        }
+        registry.add("spring.datasource.url", container::getJdbcUrl);
+        registry.add("spring.datasource.username", container::getUsername);
+        registry.add("spring.datasource.password", container::getPassword);
+    }
+
+    @Autowired
+    protected TestEntityManager entityManager;
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+}
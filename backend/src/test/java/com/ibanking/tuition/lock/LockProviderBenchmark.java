@@ -0,0 +1,126 @@
+package com.ibanking.tuition.lock;
+
+import com.ibanking.tuition.payment.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Isolation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures throughput and latency of the configured {@link LockProvider} the way initiate/confirm
+ * use it: {@link PaymentService#executeWithLocks} on a payer key and a tuition key, including any
+ * wait in the lock queue, around a transaction that holds the locks about as long as a payment
+ * ({@code app.lock.bench.workMillis} of database time). Latency is measured per completed
+ * request; requests still locked out at {@code app.lock.maxWaitMillis} are counted as busy (the
+ * 423 answer) and kept out of the latency figures.
+ * Needs the Postgres and Redis of docker-compose; opt-in, run once per provider and compare, e.g.
+ * {@code mvn test -Dtest=LockProviderBenchmark -Dbenchmark=true -Dapp.lock.provider=local}
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LockProviderBenchmark {
+
+    @Autowired
+    private LockProvider lockProvider;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.lock.bench.threads:16}")
+    private int threads;
+
+    @Value("${app.lock.bench.operationsPerThread:2000}")
+    private int operationsPerThread;
+
+    @Value("${app.lock.bench.payers:500}")
+    private int payers;
+
+    @Value("${app.lock.bench.tuitions:200}")
+    private int tuitions;
+
+    // A payment runs about half a dozen short statements while it holds its locks
+    @Value("${app.lock.bench.workMillis:5}")
+    private int workMillis;
+
+    @Test
+    void lockUnlockThroughput() throws Exception {
+        String provider = lockProvider.getClass().getSimpleName();
+        System.out.println("Running lock benchmark for " + provider + " (" + threads + " threads x " + operationsPerThread + " ops)...");
+
+        long[] latencies = new long[threads * operationsPerThread];
+        AtomicLong busy = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * operationsPerThread;
+            pool.execute(() -> {
+                try {
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        latencies[offset + i] = payOnce(busy);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        long[] completed = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.printf("[%s] throughput: %.0f payments/s, p50: %.3f ms, p99: %.3f ms, max: %.3f ms, busy: %d%n",
+                provider,
+                completed.length / seconds,
+                percentile(completed, 0.50),
+                percentile(completed, 0.99),
+                completed.length == 0 ? 0 : completed[completed.length - 1] / 1_000_000.0,
+                busy.get());
+    }
+
+    /**
+     * @return time from asking for the locks to the end of the transaction, or -1 if the locks
+     *         stayed busy until the wait deadline
+     */
+    private long payOnce(AtomicLong busy) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> keys = List.of(
+                "lock:payer:bench-" + random.nextInt(payers),
+                "lock:tuition:bench-" + random.nextInt(tuitions)
+        ).stream().distinct().sorted().toList();
+
+        long begin = System.nanoTime();
+        Optional<Boolean> outcome = paymentService.executeWithLocks(keys, "lock.bench", Isolation.READ_COMMITTED, () -> {
+            jdbcTemplate.execute("SELECT pg_sleep(" + workMillis / 1000.0 + ")");
+            return true;
+        });
+        if (outcome.isEmpty()) {
+            busy.incrementAndGet();
+            return -1;
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, idx)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,121 @@
+package com.ibanking.tuition.lock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LockWaitQueueTest {
+
+    private static final List<String> KEYS = List.of("lock:student:523H0054:HK1-2526");
+    private static final Duration TTL = Duration.ofSeconds(30);
+
+    private SimpleMeterRegistry meterRegistry;
+    private LockWaitQueue queue;
+    private StripedLockProvider provider;
+    private ExecutorService threads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        queue = new LockWaitQueue(meterRegistry);
+        provider = new StripedLockProvider();
+        threads = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        threads.shutdownNow();
+    }
+
+    private Future<String> waitInBackground(Duration maxWait) {
+        return threads.submit(() -> queue.await(KEYS, maxWait, () -> provider.tryAcquire(KEYS, TTL)));
+    }
+
+    private void release(String token) {
+        provider.release(KEYS, token);
+        queue.signal(KEYS);
+    }
+
+    private double parked() {
+        return meterRegistry.get("lock.wait.queue.depth").gauge().value();
+    }
+
+    private void awaitParked(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (parked() < count) {
+            assertTrue(System.nanoTime() < deadline, "waiters never parked");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void releaseWakesWaiter() throws Exception {
+        String holder = provider.tryAcquire(KEYS, TTL);
+        long start = System.nanoTime();
+        Future<String> waiter = waitInBackground(Duration.ofSeconds(10));
+        awaitParked(1);
+
+        release(holder);
+
+        String token = waiter.get(5, TimeUnit.SECONDS);
+        assertNotNull(token);
+        // Woken by the release, long before the deadline
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, parked());
+        assertEquals(1, meterRegistry.get("lock.wait.acquired").counter().count());
+    }
+
+    @Test
+    void waiterGivesUpAtMaxWait() throws Exception {
+        provider.tryAcquire(KEYS, TTL);
+        long start = System.nanoTime();
+
+        assertNull(queue.await(KEYS, Duration.ofMillis(200), () -> provider.tryAcquire(KEYS, TTL)));
+
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMillis >= 200, "gave up after " + waitedMillis + " ms");
+        assertTrue(waitedMillis < 2000, "gave up after " + waitedMillis + " ms");
+        assertEquals(0, parked());
+        assertEquals(1, meterRegistry.get("lock.wait.timeouts").counter().count());
+    }
+
+    @Test
+    void waitersAreServedInArrivalOrder() throws Exception {
+        String holder = provider.tryAcquire(KEYS, TTL);
+        List<Integer> served = new CopyOnWriteArrayList<>();
+        List<Future<?>> waiters = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int id = i;
+            waiters.add(threads.submit(() -> {
+                String token = queue.await(KEYS, Duration.ofSeconds(10), () -> provider.tryAcquire(KEYS, TTL));
+                assertNotNull(token);
+                served.add(id);
+                release(token);
+            }));
+            // The next waiter arrives only once this one is queued
+            awaitParked(i + 1);
+        }
+
+        release(holder);
+        for (Future<?> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of(0, 1, 2, 3, 4), served);
+    }
+}
@@ -0,0 +1,253 @@
+package com.ibanking.tuition.payment;
+
+import com.ibanking.tuition.email.EmailService;
+import com.ibanking.tuition.lock.LockProvider;
+import com.ibanking.tuition.lock.LockWaitQueue;
+import com.ibanking.tuition.lock.StripedLockProvider;
+import com.ibanking.tuition.tuition.StudentTuition;
+import com.ibanking.tuition.tuition.StudentTuitionRepository;
+import com.ibanking.tuition.tuition.TuitionIndex;
+import com.ibanking.tuition.tx.StubTransactionManager;
+import com.ibanking.tuition.tx.TransactionRetryExecutor;
+import com.ibanking.tuition.user.Customer;
+import com.ibanking.tuition.user.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+    private static final List<String> KEYS = List.of("lock:student:523H0054:HK1-2526", "lock:customer:1");
+    private static final Duration TTL = Duration.ofSeconds(30);
+    private static final long LOCK_MAX_WAIT_MILLIS = 200;
+
+    private StubTransactionManager transactionManager;
+    private StripedLockProvider locks;
+    private LockWaitQueue lockWaitQueue;
+    private CustomerRepository customerRepository;
+    private StudentTuitionRepository studentTuitionRepository;
+    private PaymentTransactionRepository paymentTransactionRepository;
+    private PaymentStatusNotifier statusNotifier;
+
+    @BeforeEach
+    void setUp() {
+        transactionManager = new StubTransactionManager();
+        locks = new StripedLockProvider();
+        lockWaitQueue = new LockWaitQueue(new SimpleMeterRegistry());
+        customerRepository = mock(CustomerRepository.class);
+        studentTuitionRepository = mock(StudentTuitionRepository.class);
+        paymentTransactionRepository = mock(PaymentTransactionRepository.class);
+        statusNotifier = mock(PaymentStatusNotifier.class);
+    }
+
+    private PaymentService paymentService(LockProvider lockProvider) {
+        TransactionRetryExecutor retryExecutor = new TransactionRetryExecutor(transactionManager,
+                new SimpleMeterRegistry(), 3, 1, 10, 0.1, 10);
+        return new PaymentService(customerRepository, studentTuitionRepository,
+                paymentTransactionRepository, mock(OtpStore.class), lockProvider, lockWaitQueue,
+                mock(EmailService.class), statusNotifier, mock(TuitionIndex.class),
+                transactionManager, retryExecutor, LOCK_MAX_WAIT_MILLIS, 300, 500);
+    }
+
+    /** Same locks, but taken and dropped with the transaction like Postgres advisory locks */
+    private LockProvider transactionScoped(LockProvider delegate) {
+        return new LockProvider() {
+            @Override
+            public String tryAcquire(List<String> lockKeys, Duration ttl) {
+                assertTrue(TransactionSynchronizationManager.isActualTransactionActive(), "tried outside a transaction");
+                return delegate.tryAcquire(lockKeys, ttl);
+            }
+
+            @Override
+            public void release(List<String> lockKeys, String token) {
+                delegate.release(lockKeys, token);
+            }
+
+            @Override
+            public boolean releasesOnTransactionEnd() {
+                return true;
+            }
+        };
+    }
+
+    @Test
+    void workRunsInATransactionWhileHoldingTheLocks() {
+        PaymentService service = paymentService(locks);
+
+        Optional<String> result = service.executeWithLocks(KEYS, "test", Isolation.READ_COMMITTED, () -> {
+            assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+            // Held for the whole unit of work
+            assertNull(locks.tryAcquire(List.of(KEYS.get(0)), TTL));
+            return "done";
+        });
+
+        assertEquals(Optional.of("done"), result);
+        assertEquals(1, transactionManager.commits.get());
+        assertNotNull(locks.tryAcquire(KEYS, TTL), "locks were not released");
+    }
+
+    @Test
+    void emptyWhenLockIsStillBusyAtTheDeadline() {
+        String holder = locks.tryAcquire(List.of(KEYS.get(1)), TTL);
+        assertNotNull(holder);
+        PaymentService service = paymentService(locks);
+        AtomicInteger ran = new AtomicInteger();
+        long start = System.nanoTime();
+
+        Optional<String> result = service.executeWithLocks(KEYS, "test", Isolation.READ_COMMITTED, () -> {
+            ran.incrementAndGet();
+            return "done";
+        });
+
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(Optional.empty(), result);
+        assertEquals(0, ran.get());
+        assertTrue(waitedMillis >= LOCK_MAX_WAIT_MILLIS, "gave up after " + waitedMillis + " ms");
+        // Waiting happened with no transaction open
+        assertEquals(0, transactionManager.begins.get());
+        // All-or-nothing: the free key was not left locked
+        assertNotNull(locks.tryAcquire(List.of(KEYS.get(0)), TTL));
+    }
+
+    @Test
+    void transactionScopedLocksWaitBetweenTransactions() {
+        String holder = locks.tryAcquire(KEYS, TTL);
+        PaymentService service = paymentService(transactionScoped(locks));
+        AtomicInteger ran = new AtomicInteger();
+
+        Optional<String> result = service.executeWithLocks(KEYS, "test", Isolation.READ_COMMITTED, () -> {
+            ran.incrementAndGet();
+            return "done";
+        });
+
+        assertEquals(Optional.empty(), result);
+        assertEquals(0, ran.get());
+        // Every failed try ended its own transaction before waiting
+        assertTrue(transactionManager.begins.get() >= 1);
+        assertEquals(0, transactionManager.open());
+
+        locks.release(KEYS, holder);
+        assertEquals(Optional.of("done"), service.executeWithLocks(KEYS, "test", Isolation.READ_COMMITTED, () -> "done"));
+        assertEquals(0, transactionManager.open());
+    }
+
+    @Test
+    void releaseWakesTransactionScopedWaiter() throws Exception {
+        String holder = locks.tryAcquire(KEYS, TTL);
+        PaymentService service = paymentService(transactionScoped(locks));
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            service.releaseLocks(KEYS, holder);
+        });
+        releaser.start();
+
+        Optional<String> result = service.executeWithLocks(KEYS, "test", Isolation.READ_COMMITTED, () -> "done");
+        releaser.join();
+
+        assertEquals(Optional.of("done"), result);
+        assertEquals(0, transactionManager.open());
+    }
+
+    // processPayment
+
+    private static final Long TXN_ID = 7L;
+    private static final Long PAYER_ID = 1L;
+    private static final BigDecimal AMOUNT = new BigDecimal("1500000.00");
+
+    /** Run processPayment the way confirm does, under the locks in a transaction of its own */
+    private boolean confirm() {
+        PaymentTransaction transaction = new PaymentTransaction();
+        transaction.setId(TXN_ID);
+        transaction.setPayerCustomerId(PAYER_ID);
+        transaction.setStudentId("523H0054");
+        transaction.setSemester("HK1-2526");
+        transaction.setAmount(AMOUNT);
+        transaction.setStatus(PaymentTransaction.Status.PENDING_OTP);
+        when(paymentTransactionRepository.findById(TXN_ID)).thenReturn(Optional.of(transaction));
+        when(paymentTransactionRepository.claimForProcessing(eq(TXN_ID), anyString(), any())).thenReturn(1);
+        when(customerRepository.findById(PAYER_ID)).thenReturn(Optional.of(new Customer()));
+        when(studentTuitionRepository.findByStudentIdAndSemester("523H0054", "HK1-2526"))
+                .thenReturn(Optional.of(new StudentTuition()));
+        PaymentService service = paymentService(locks);
+        return service.executeWithLocks(KEYS, "test", Isolation.READ_COMMITTED, () -> service.processPayment(TXN_ID))
+                .orElseThrow();
+    }
+
+    @Test
+    void paymentMarksTuitionPaidBeforeDebiting() {
+        when(studentTuitionRepository.markPaidIfUnpaid(eq("523H0054"), eq("HK1-2526"), any())).thenReturn(1);
+        when(customerRepository.debitIfSufficient(PAYER_ID, AMOUNT)).thenReturn(1);
+
+        assertTrue(confirm());
+
+        InOrder order = inOrder(studentTuitionRepository, customerRepository, paymentTransactionRepository);
+        order.verify(studentTuitionRepository).markPaidIfUnpaid(eq("523H0054"), eq("HK1-2526"), any());
+        order.verify(customerRepository).debitIfSufficient(PAYER_ID, AMOUNT);
+        order.verify(paymentTransactionRepository).completeProcessing(eq(TXN_ID), eq(PaymentTransaction.Status.SUCCESS), any());
+        assertEquals(1, transactionManager.commits.get());
+    }
+
+    @Test
+    void alreadyPaidTuitionFailsWithoutTouchingTheBalance() {
+        when(studentTuitionRepository.markPaidIfUnpaid(eq("523H0054"), eq("HK1-2526"), any())).thenReturn(0);
+
+        assertFalse(confirm());
+
+        verify(customerRepository, never()).debitIfSufficient(any(), any());
+        verify(paymentTransactionRepository).completeProcessing(eq(TXN_ID), eq(PaymentTransaction.Status.FAILED), any());
+        verify(statusNotifier).statusChanged(TXN_ID, PaymentTransaction.Status.FAILED);
+    }
+
+    @Test
+    void insufficientBalanceRollsTheWholePaymentBack() {
+        when(studentTuitionRepository.markPaidIfUnpaid(eq("523H0054"), eq("HK1-2526"), any())).thenReturn(1);
+        when(customerRepository.debitIfSufficient(PAYER_ID, AMOUNT)).thenReturn(0);
+
+        assertThrows(PaymentService.InsufficientBalanceException.class, this::confirm);
+
+        // The tuition mark and the claim go with the rollback; nothing is put back by hand
+        assertEquals(1, transactionManager.rollbacks.get());
+        assertEquals(0, transactionManager.commits.get());
+        verify(paymentTransactionRepository, never()).completeProcessing(any(), any(), any());
+        verify(statusNotifier, never()).statusChanged(any(Long.class), any());
+        assertNotNull(locks.tryAcquire(KEYS, TTL), "locks were not released");
+    }
+
+    @Test
+    void failPaymentRecordsTheRolledBackPaymentAsFailed() {
+        when(paymentTransactionRepository.failIfPending(eq(TXN_ID), any())).thenReturn(1);
+
+        assertTrue(paymentService(locks).failPayment(TXN_ID));
+
+        verify(statusNotifier).statusChanged(TXN_ID, PaymentTransaction.Status.FAILED);
+    }
+}
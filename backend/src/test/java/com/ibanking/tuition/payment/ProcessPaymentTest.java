@@ -0,0 +1,177 @@
+package com.ibanking.tuition.payment;
+
+import com.ibanking.tuition.PostgresTestSupport;
+import com.ibanking.tuition.email.EmailService;
+import com.ibanking.tuition.lock.LockWaitQueue;
+import com.ibanking.tuition.lock.StripedLockProvider;
+import com.ibanking.tuition.tuition.StudentTuition;
+import com.ibanking.tuition.tuition.StudentTuitionRepository;
+import com.ibanking.tuition.tuition.TuitionIndex;
+import com.ibanking.tuition.tx.TransactionRetryExecutor;
+import com.ibanking.tuition.user.Customer;
+import com.ibanking.tuition.user.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The guarded updates of {@link PaymentService#processPayment} against the real schema, run the
+ * way confirm runs them: under the locks, in a transaction that really commits or rolls back. The
+ * tuition is marked paid before the payer is debited, and a debit the balance cannot cover rolls
+ * the mark back with the rest of the transaction.
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProcessPaymentTest extends PostgresTestSupport {
+
+    private static final String STUDENT = "523H0054";
+    private static final String SEMESTER = "HK1-2526";
+    private static final BigDecimal TUITION = new BigDecimal("1500000.00");
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private StudentTuitionRepository studentTuitionRepository;
+
+    @Autowired
+    private PaymentTransactionRepository paymentTransactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private PaymentService paymentService;
+    private Long payerId;
+    private Long transactionId;
+
+    @BeforeEach
+    void setUp() {
+        TransactionRetryExecutor retryExecutor = new TransactionRetryExecutor(transactionManager,
+                new SimpleMeterRegistry(), 3, 1, 10, 0.1, 10);
+        paymentService = new PaymentService(customerRepository, studentTuitionRepository,
+                paymentTransactionRepository, mock(OtpStore.class), new StripedLockProvider(),
+                new LockWaitQueue(new SimpleMeterRegistry()), mock(EmailService.class),
+                mock(PaymentStatusNotifier.class), mock(TuitionIndex.class), transactionManager,
+                retryExecutor, 200, 300, 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from payment_transactions where id = ?", transactionId);
+        jdbcTemplate.update("delete from student_tuition where student_id = ? and semester = ?", STUDENT, SEMESTER);
+        jdbcTemplate.update("delete from customers where id = ?", payerId);
+    }
+
+    private Optional<Boolean> confirm() {
+        return paymentService.executeWithLocks(List.of("lock:payer:" + payerId, "lock:tuition:" + STUDENT + ":" + SEMESTER),
+                "payment.confirm", Isolation.READ_COMMITTED, () -> paymentService.processPayment(transactionId));
+    }
+
+    private void payer(BigDecimal balance) {
+        Customer customer = new Customer();
+        customer.setUsername("payer");
+        customer.setPasswordHash("{noop}secret");
+        customer.setFullName("Payer");
+        customer.setPhone("0900000000");
+        customer.setEmail("payer@example.com");
+        customer.setBalance(balance);
+        payerId = customerRepository.save(customer).getId();
+    }
+
+    private void tuition(boolean paid) {
+        StudentTuition tuition = new StudentTuition();
+        tuition.setStudentId(STUDENT);
+        tuition.setStudentName("Student");
+        tuition.setSemester(SEMESTER);
+        tuition.setAmount(TUITION);
+        tuition.setPaid(paid);
+        studentTuitionRepository.save(tuition);
+    }
+
+    private void pendingPayment() {
+        PaymentTransaction transaction = new PaymentTransaction();
+        transaction.setPayerCustomerId(payerId);
+        transaction.setStudentId(STUDENT);
+        transaction.setSemester(SEMESTER);
+        transaction.setAmount(TUITION);
+        transaction.setStatus(PaymentTransaction.Status.PENDING_OTP);
+        transaction.setCreatedAt(OffsetDateTime.now());
+        transaction.setLockId("unclaimed");
+        transaction.setLockExpiry(OffsetDateTime.now());
+        transactionId = paymentTransactionRepository.save(transaction).getId();
+    }
+
+    private BigDecimal balance() {
+        return jdbcTemplate.queryForObject("select balance from customers where id = ?", BigDecimal.class, payerId);
+    }
+
+    private boolean tuitionPaid() {
+        return jdbcTemplate.queryForObject("select paid from student_tuition where student_id = ? and semester = ?",
+                Boolean.class, STUDENT, SEMESTER);
+    }
+
+    private String status() {
+        return jdbcTemplate.queryForObject("select status from payment_transactions where id = ?", String.class, transactionId);
+    }
+
+    @Test
+    void paymentDebitsThePayerAndMarksTheTuitionPaid() {
+        payer(new BigDecimal("2000000.00"));
+        tuition(false);
+        pendingPayment();
+
+        assertEquals(Optional.of(true), confirm());
+
+        assertEquals(new BigDecimal("500000.00"), balance());
+        assertTrue(tuitionPaid());
+        assertEquals("SUCCESS", status());
+    }
+
+    @Test
+    void insufficientBalanceLeavesTheTuitionUnpaid() {
+        payer(new BigDecimal("1000000.00"));
+        tuition(false);
+        pendingPayment();
+
+        assertThrows(PaymentService.InsufficientBalanceException.class, this::confirm);
+
+        assertEquals(new BigDecimal("1000000.00"), balance());
+        assertFalse(tuitionPaid(), "the tuition mark must roll back with the failed debit");
+        assertEquals("PENDING_OTP", status(), "the claim rolls back too");
+
+        // Not a proxy here, so give failPayment the transaction its @Transactional would open
+        assertEquals(Boolean.TRUE, new TransactionTemplate(transactionManager)
+                .execute(status -> paymentService.failPayment(transactionId)));
+        assertEquals("FAILED", status());
+    }
+
+    @Test
+    void alreadyPaidTuitionLeavesTheBalanceAlone() {
+        payer(new BigDecimal("2000000.00"));
+        tuition(true);
+        pendingPayment();
+
+        assertEquals(Optional.of(false), confirm());
+
+        assertEquals(new BigDecimal("2000000.00"), balance());
+        assertTrue(tuitionPaid());
+        assertEquals("FAILED", status());
+    }
+}
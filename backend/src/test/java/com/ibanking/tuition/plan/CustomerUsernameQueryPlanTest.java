@@ -0,0 +1,60 @@
+package com.ibanking.tuition.plan;
+
+import com.ibanking.tuition.user.Customer;
+import com.ibanking.tuition.user.CustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Case-insensitive login, /me and password changes look customers up by username_normalized;
+ * the lookup must hit its unique index rather than scan the table.
+ */
+class CustomerUsernameQueryPlanTest extends QueryPlanTestSupport {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Test
+    void normalizedUsernameLookupUsesIndex() {
+        customerRepository.save(customer("Alice"));
+
+        AtomicReference<Optional<Customer>> found = new AtomicReference<>();
+        assertIndexed("customer by normalized username",
+                () -> found.set(customerRepository.findByUsernameNormalized(Customer.normalizeUsername("ALICE"))));
+
+        assertTrue(found.get().isPresent());
+        assertEquals("Alice", found.get().get().getUsername());
+    }
+
+    @Test
+    void normalizedUsernameColumnFollowsWrites() {
+        Customer saved = customerRepository.saveAndFlush(customer("Alice"));
+        assertEquals("alice", storedNormalizedUsername(saved.getId()));
+
+        saved.setUsername("Bob");
+        customerRepository.saveAndFlush(saved);
+        assertEquals("bob", storedNormalizedUsername(saved.getId()));
+    }
+
+    private String storedNormalizedUsername(Long id) {
+        return jdbcTemplate.queryForObject("SELECT username_normalized FROM customers WHERE id = ?", String.class, id);
+    }
+
+    private static Customer customer(String username) {
+        Customer customer = new Customer();
+        customer.setUsername(username);
+        customer.setPasswordHash("x");
+        customer.setFullName(username);
+        customer.setPhone("0900000000");
+        customer.setEmail(username.toLowerCase() + "@example.com");
+        customer.setBalance(BigDecimal.ZERO);
+        return customer;
+    }
+}
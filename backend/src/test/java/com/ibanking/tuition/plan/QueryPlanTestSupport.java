@@ -0,0 +1,104 @@
+package com.ibanking.tuition.plan;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibanking.tuition.PostgresTestSupport;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Base for tests asserting that repository queries can be answered from an index. The schema
+ * comes from the Flyway migrations on a real Postgres. Each repository method is called as the
+ * application calls it; every statement Hibernate sends for it is then EXPLAINed with its bound
+ * parameters and sequential scans disabled, so even on near-empty tables the planner reveals
+ * whether a usable index exists. A Seq Scan left in a plan fails the test, and so does an index
+ * scan that does not constrain the index's leading column: with sequential scans disabled the
+ * planner reads a whole index instead, which is no better.
+ */
+@Import(QueryPlanTestSupport.CaptureConfig.class)
+public abstract class QueryPlanTestSupport extends PostgresTestSupport {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @TestConfiguration
+    static class CaptureConfig {
+        @Bean
+        static StatementCapture statementCapture() {
+            return new StatementCapture();
+        }
+    }
+
+    /**
+     * Call a repository method and assert that no statement it sends reads a whole table
+     * @param name Query name for failure messages
+     * @param call The repository call
+     */
+    protected void assertIndexed(String name, Runnable call) {
+        assertEquals(List.of(), fullScans(name, call), name + ": full scan in the plan");
+    }
+
+    /**
+     * Call a repository method and collect the full scans in the plans of the statements it sends
+     * @param name Query name for failure messages
+     * @param call The repository call
+     * @return one entry per full scan: the relation for a Seq Scan, the index for a full index scan
+     */
+    protected List<String> fullScans(String name, Runnable call) {
+        // Start from an empty persistence context so the call really reaches the database
+        entityManager.flush();
+        entityManager.clear();
+        List<StatementCapture.Statement> statements = StatementCapture.record(call);
+        assertFalse(statements.isEmpty(), name + ": no SQL was sent");
+
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        List<String> scans = new ArrayList<>();
+        for (StatementCapture.Statement statement : statements) {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + statement.sql(),
+                    String.class, statement.parameters().toArray());
+            try {
+                collectFullScans(JSON.readTree(plan), scans);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unreadable plan: " + plan, e);
+            }
+        }
+        return scans;
+    }
+
+    private void collectFullScans(JsonNode node, List<String> scans) {
+        if (node.isArray()) {
+            node.forEach(child -> collectFullScans(child, scans));
+            return;
+        }
+        if (!node.isObject()) return;
+        String type = node.path("Node Type").asText();
+        if (type.equals("Seq Scan")) {
+            scans.add(node.path("Relation Name").asText());
+        } else if (type.endsWith("Index Scan") || type.equals("Index Only Scan")) {
+            String index = node.path("Index Name").asText();
+            if (!seeksLeadingColumn(index, node.path("Index Cond").asText(""))) {
+                scans.add(index);
+            }
+        }
+        collectFullScans(node.path("Plan"), scans);
+        collectFullScans(node.path("Plans"), scans);
+    }
+
+    private boolean seeksLeadingColumn(String index, String indexCond) {
+        Map<String, Object> info = jdbcTemplate.queryForMap(
+                "SELECT indpred IS NOT NULL AS partial, pg_get_indexdef(indexrelid, 1, true) AS leading "
+                + "FROM pg_index WHERE indexrelid = to_regclass(?)", index);
+        // A partial index holds only the rows its predicate selects (in-flight ones), whatever the condition
+        if (Boolean.TRUE.equals(info.get("partial"))) return true;
+        // A condition on a later column alone is checked against every entry of the index
+        return Pattern.compile("\\b" + Pattern.quote((String) info.get("leading")) + "\\b").matcher(indexCond).find();
+    }
+}
@@ -0,0 +1,171 @@
+package com.ibanking.tuition.plan;
+
+import com.ibanking.tuition.email.EmailOutboxRepository;
+import com.ibanking.tuition.payment.PaymentTransaction;
+import com.ibanking.tuition.payment.PaymentTransactionRepository;
+import com.ibanking.tuition.tuition.StudentTuitionRepository;
+import com.ibanking.tuition.user.CustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every repository query must be served by an index from {@code db/migration}. Add a test here
+ * with each new query.
+ */
+class RepositoryQueryPlanTest extends QueryPlanTestSupport {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.now();
+    private static final String STUDENT = "523H0054";
+    private static final String SEMESTER = "HK1-2526";
+    private static final List<PaymentTransaction.Status> PENDING =
+            List.of(PaymentTransaction.Status.PENDING_OTP, PaymentTransaction.Status.PROCESSING);
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private StudentTuitionRepository studentTuitionRepository;
+
+    @Autowired
+    private PaymentTransactionRepository paymentTransactionRepository;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    // CustomerRepository
+
+    @Test
+    void customerByUsername() {
+        assertIndexed("customer by username", () -> customerRepository.findByUsername("alice"));
+    }
+
+    @Test
+    void loginCandidates() {
+        assertIndexed("login candidates", () -> customerRepository.findLoginCandidates("alice"));
+    }
+
+    @Test
+    void debitCustomer() {
+        assertIndexed("debit customer", () -> customerRepository.debitIfSufficient(1L, BigDecimal.ONE));
+    }
+
+    // StudentTuitionRepository
+
+    @Test
+    void tuitionByStudentAndSemester() {
+        assertIndexed("tuition by student and semester",
+                () -> studentTuitionRepository.findByStudentIdAndSemester(STUDENT, SEMESTER));
+    }
+
+    @Test
+    void unpaidTuitionByStudentAndSemester() {
+        assertIndexed("unpaid tuition by student and semester",
+                () -> studentTuitionRepository.findByStudentIdAndSemesterAndPaidIsFalse(STUDENT, SEMESTER));
+    }
+
+    @Test
+    void tuitionRowsBySemesterReadOnePartition() {
+        // The index loader reads a whole semester, so a full scan is the right plan; partition
+        // pruning must still confine it to that semester's partition
+        List<String> scanned = fullScans("tuition rows by semester",
+                () -> studentTuitionRepository.findRowsBySemester(SEMESTER));
+        assertEquals(1, scanned.size(), "scanned " + scanned);
+        assertTrue(scanned.get(0).startsWith("student_tuition_"), "scanned " + scanned);
+    }
+
+    @Test
+    void tuitionRowsBySemesterAndStudentIds() {
+        assertIndexed("tuition rows by semester and student ids",
+                () -> studentTuitionRepository.findRowsBySemesterAndStudentIdIn(SEMESTER,
+                        List.of(STUDENT, "523H0111", "523H0112")));
+    }
+
+    @Test
+    void markTuitionPaid() {
+        assertIndexed("mark tuition paid",
+                () -> studentTuitionRepository.markPaidIfUnpaid(STUDENT, SEMESTER, LocalDate.now()));
+    }
+
+    // PaymentTransactionRepository
+
+    @Test
+    void transactionById() {
+        assertIndexed("transaction by id", () -> paymentTransactionRepository.findById(1L));
+    }
+
+    @Test
+    void claimTransactionForProcessing() {
+        assertIndexed("claim transaction for processing",
+                () -> paymentTransactionRepository.claimForProcessing(1L, "plan-test", NOW));
+    }
+
+    @Test
+    void completeTransaction() {
+        assertIndexed("complete transaction",
+                () -> paymentTransactionRepository.completeProcessing(1L, PaymentTransaction.Status.SUCCESS, NOW));
+    }
+
+    @Test
+    void failTransactionIfPending() {
+        assertIndexed("fail transaction if pending",
+                () -> paymentTransactionRepository.failIfPending(1L, NOW));
+    }
+
+    @Test
+    void expireTransactionIfPending() {
+        assertIndexed("expire transaction if pending",
+                () -> paymentTransactionRepository.expireIfPending(1L, NOW, NOW));
+    }
+
+    @Test
+    void historyFirstPage() {
+        assertIndexed("history first page",
+                () -> paymentTransactionRepository.findHistoryPage(1L, PageRequest.ofSize(50)));
+    }
+
+    @Test
+    void historyNextPage() {
+        assertIndexed("history next page",
+                () -> paymentTransactionRepository.findHistoryPageAfter(1L, NOW, 1000L, PageRequest.ofSize(50)));
+    }
+
+    @Test
+    void transactionsByStatus() {
+        assertIndexed("transactions by status",
+                () -> paymentTransactionRepository.findByStatus(PaymentTransaction.Status.PENDING_OTP));
+    }
+
+    @Test
+    void transactionsByStudentSemesterAndStatuses() {
+        assertIndexed("transactions by student, semester and statuses",
+                () -> paymentTransactionRepository.findByStudentIdAndSemesterAndStatusIn(STUDENT, SEMESTER, PENDING));
+    }
+
+    @Test
+    void transactionsByPayerAndStatuses() {
+        assertIndexed("transactions by payer and statuses",
+                () -> paymentTransactionRepository.findByPayerCustomerIdAndStatusIn(1L, PENDING));
+    }
+
+    @Test
+    void expireOverdueChunk() {
+        assertIndexed("expire overdue chunk",
+                () -> paymentTransactionRepository.expireOverdueChunk(NOW, NOW, 500));
+    }
+
+    // EmailOutboxRepository
+
+    @Test
+    void claimDueOutboxMessages() {
+        assertIndexed("claim due outbox messages", () -> emailOutboxRepository.claimDue(NOW, 20));
+    }
+}
@@ -0,0 +1,113 @@
+package com.ibanking.tuition.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the per-request cost of authenticating a bearer token: the old way (three
+ * parses, each with a freshly built parser), one parse on a shared parser, and
+ * {@link JwtService#verify} both when its verified-token cache answers and when it misses. Real
+ * traffic sits between the last two, according to the hit ratio that
+ * {@code auth.token.cache.hits}/{@code auth.token.cache.misses} report. Needs no running
+ * services; opt-in: {@code mvn test -Dtest=JwtAuthBenchmark -Dbenchmark=true}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthBenchmark {
+
+    // Same dev secret and token lifetime as application.yml
+    private static final String SECRET = "change-this-secret-key-to-a-long-random-string";
+    private static final int TOKENS = 1000;
+
+    private SecretKey secretKey;
+    private JwtParser sharedParser;
+    private String[] tokens;
+    private int next;
+
+    // Room for every token, so after the first round each verify is a hit
+    private JwtService warmCache;
+    // Holds one entry, so round-robin over the tokens misses every time, paying the signature check and the insert
+    private JwtService coldCache;
+
+    @Setup
+    public void setUp() {
+        secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(JwtService.Base64Util.ensureBase64(SECRET)));
+        sharedParser = Jwts.parserBuilder().setSigningKey(secretKey).build();
+        warmCache = new JwtService(SECRET, 15, new VerifiedTokenCache(new SimpleMeterRegistry(), 10_000));
+        coldCache = new JwtService(SECRET, 15, new VerifiedTokenCache(new SimpleMeterRegistry(), 1));
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            UserDetails user = User.withUsername("bench-user-" + i).password("").roles("USER").build();
+            tokens[i] = warmCache.generateToken(user, (long) i, 0L);
+            warmCache.verify(tokens[i]);
+        }
+    }
+
+    private String nextToken() {
+        String token = tokens[next];
+        next = (next + 1) % TOKENS;
+        return token;
+    }
+
+    private Claims parserPerCall(String token) {
+        return Jwts.parserBuilder().setSigningKey(secretKey).build().parseClaimsJws(token).getBody();
+    }
+
+    @Benchmark
+    public String threeParsesNewParserEach() {
+        // extractUsername + isTokenValid (subject and expiry parsed separately)
+        String token = nextToken();
+        String username = parserPerCall(token).getSubject();
+        String again = parserPerCall(token).getSubject();
+        return parserPerCall(token).getExpiration().after(new Date()) && username.equals(again) ? username : null;
+    }
+
+    @Benchmark
+    public String oneParseSharedParser() {
+        return sharedParser.parseClaimsJws(nextToken()).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String verifyCacheHit() {
+        return warmCache.verify(nextToken()).getSubject();
+    }
+
+    @Benchmark
+    public String verifyCacheMiss() {
+        return coldCache.verify(nextToken()).getSubject();
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void run() throws Exception {
+        new Runner(new OptionsBuilder().include(JwtAuthBenchmark.class.getName() + "\\.").build()).run();
+    }
+}
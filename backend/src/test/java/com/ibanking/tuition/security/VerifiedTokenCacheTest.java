@@ -0,0 +1,124 @@
+package com.ibanking.tuition.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerifiedTokenCacheTest {
+
+    private static final String SECRET = "change-this-secret-key-to-a-long-random-string";
+    private static final int MAX_ENTRIES = 10;
+
+    private SimpleMeterRegistry meterRegistry;
+    private VerifiedTokenCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new VerifiedTokenCache(meterRegistry, MAX_ENTRIES);
+    }
+
+    private static Claims expiringIn(long millis) {
+        return Jwts.claims().setSubject("alice").setExpiration(new Date(System.currentTimeMillis() + millis));
+    }
+
+    /** JWT expiry has whole-second precision: claims that expire one to two seconds from now */
+    private static Claims expiringSoon() {
+        return Jwts.claims().setSubject("alice").setExpiration(new Date((System.currentTimeMillis() / 1000 + 2) * 1000));
+    }
+
+    private static void sleepUntilExpired(Claims claims) throws InterruptedException {
+        Thread.sleep(Math.max(0, claims.getExpiration().getTime() - System.currentTimeMillis()) + 50);
+    }
+
+    private double size() {
+        return meterRegistry.get("auth.token.cache.size").gauge().value();
+    }
+
+    @Test
+    void servesWhatWasPut() {
+        Claims claims = expiringIn(60_000);
+        cache.put("token", claims);
+
+        assertSame(claims, cache.get("token"));
+        assertNull(cache.get("other-token"));
+    }
+
+    @Test
+    void expiredTokenIsNotServed() throws InterruptedException {
+        Claims shortLived = expiringSoon();
+        cache.put("expired", expiringIn(-1000));
+        cache.put("short-lived", shortLived);
+        assertNull(cache.get("expired"));
+        assertNotNull(cache.get("short-lived"));
+
+        sleepUntilExpired(shortLived);
+
+        assertNull(cache.get("short-lived"));
+        assertEquals(0, size(), "expired entries are dropped when read");
+    }
+
+    @Test
+    void tokenWithoutExpiryIsNotCached() {
+        cache.put("token", Jwts.claims().setSubject("alice"));
+
+        assertNull(cache.get("token"));
+    }
+
+    @Test
+    void sizeStaysBounded() {
+        for (int i = 0; i < 1000; i++) {
+            cache.put("token-" + i, expiringIn(60_000));
+            assertTrue(size() <= MAX_ENTRIES, "grew to " + size());
+        }
+        assertNotNull(cache.get("token-999"), "the newest token is always kept");
+    }
+
+    @Test
+    void expiredEntriesAreEvictedBeforeLiveOnes() throws InterruptedException {
+        Claims dying = expiringSoon();
+        for (int i = 0; i < MAX_ENTRIES / 2; i++) {
+            cache.put("live-" + i, expiringIn(60_000));
+            cache.put("dying-" + i, dying);
+        }
+        sleepUntilExpired(dying);
+
+        cache.put("new", expiringIn(60_000));
+
+        for (int i = 0; i < MAX_ENTRIES / 2; i++) {
+            assertNotNull(cache.get("live-" + i), "evicted live-" + i + " while expired entries were there");
+        }
+        assertEquals(MAX_ENTRIES / 2 + 1, size());
+    }
+
+    @Test
+    void tamperedTokenMisses() {
+        JwtService jwtService = new JwtService(SECRET, 15, cache);
+        String token = jwtService.generateToken("alice", 1L, List.of("ROLE_USER"), 0L);
+        assertNotNull(jwtService.verify(token));
+        assertNotNull(cache.get(token));
+
+        // Change the first character of the signature (the last one partly encodes padding bits)
+        int signature = token.lastIndexOf('.') + 1;
+        char first = token.charAt(signature);
+        String tampered = token.substring(0, signature) + (first == 'A' ? 'B' : 'A') + token.substring(signature + 1);
+
+        assertNull(cache.get(tampered));
+        assertNull(jwtService.verify(tampered));
+        // Changing the payload must miss too, even with the original signature
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + "." + parts[1].substring(0, parts[1].length() - 2) + "xx." + parts[2];
+        assertNull(jwtService.verify(forged));
+    }
+}
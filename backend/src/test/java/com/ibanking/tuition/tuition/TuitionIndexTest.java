@@ -0,0 +1,172 @@
+package com.ibanking.tuition.tuition;
+
+import com.ibanking.tuition.semester.SemesterCalendar;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TuitionIndexTest {
+
+    private static final String SEMESTER = "HK1-2526";
+
+    private StudentTuitionRepository repository;
+    private TuitionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(StudentTuitionRepository.class);
+        index = new TuitionIndex(repository, mock(StringRedisTemplate.class),
+                new SemesterCalendar(SEMESTER, "Asia/Ho_Chi_Minh"),
+                mock(RedisMessageListenerContainer.class), new SimpleMeterRegistry());
+    }
+
+    private static TuitionRow row(String studentId, boolean paid) {
+        return new TuitionRow(studentId, "Student " + studentId, SEMESTER, new BigDecimal("1500000.00"), paid);
+    }
+
+    private void load(TuitionRow... rows) {
+        when(repository.findRowsBySemester(SEMESTER)).thenReturn(List.of(rows));
+        index.reload();
+    }
+
+    @Test
+    void hit() {
+        load(row("523H0054", false), row("523H0111", true));
+
+        TuitionIndex.Lookup lookup = index.lookup("523H0054", SEMESTER);
+        assertTrue(lookup.answered());
+        assertEquals(new TuitionIndex.Entry("523H0054", "Student 523H0054", SEMESTER, new BigDecimal("1500000.00"), false),
+                lookup.entry());
+        assertTrue(index.lookup("523H0111", SEMESTER).entry().paid());
+    }
+
+    @Test
+    void missIsAnsweredAbsent() {
+        load(row("523H0054", false));
+
+        TuitionIndex.Lookup lookup = index.lookup("523H9999", SEMESTER);
+        assertTrue(lookup.answered());
+        assertNull(lookup.entry());
+    }
+
+    @Test
+    void otherSemesterOrNoRosterFallsBackToDatabase() {
+        assertFalse(index.lookup("523H0054", SEMESTER).answered());
+        load(row("523H0054", false));
+        assertFalse(index.lookup("523H0054", "HK2-2526").answered());
+    }
+
+    @Test
+    void bloomFilterRejectsMostUnknownIds() {
+        List<TuitionRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(row(String.format("523H%04d", i), false));
+        }
+        TuitionIndex.Snapshot snapshot = new TuitionIndex.Snapshot(SEMESTER, rows);
+
+        for (TuitionRow row : rows) {
+            assertTrue(snapshot.mightContain(TuitionIndex.pack(row.studentId())), "false negative for " + row.studentId());
+        }
+        int bloomNegatives = 0;
+        int unknown = 10_000;
+        for (int i = 0; i < unknown; i++) {
+            long key = TuitionIndex.pack(String.format("524H%04d", i));
+            if (!snapshot.mightContain(key)) {
+                bloomNegatives++;
+                assertNull(snapshot.find(key));
+            }
+        }
+        // About 1% false positives at ten bits per entry; allow generous slack
+        assertTrue(bloomNegatives > unknown * 95 / 100, "only " + bloomNegatives + " Bloom negatives");
+    }
+
+    @Test
+    void collidingKeysWrapAroundTheTable() {
+        // Two rows give a 32-slot table; find IDs whose home slot is the last one
+        int lastSlot = 31;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; ids.size() < 3; i++) {
+            String id = String.format("W%07d", i);
+            if (((int) TuitionIndex.mix(TuitionIndex.pack(id)) & lastSlot) == lastSlot) {
+                ids.add(id);
+            }
+        }
+        TuitionIndex.Snapshot snapshot = new TuitionIndex.Snapshot(SEMESTER, List.of(row(ids.get(0), false), row(ids.get(1), true)));
+
+        assertEquals(lastSlot, snapshot.slotFor(TuitionIndex.pack(ids.get(0))));
+        assertEquals(0, snapshot.slotFor(TuitionIndex.pack(ids.get(1))), "second key should wrap to slot 0");
+        assertEquals(ids.get(0), snapshot.find(TuitionIndex.pack(ids.get(0))).studentId());
+        TuitionIndex.Entry wrapped = snapshot.find(TuitionIndex.pack(ids.get(1)));
+        assertNotNull(wrapped);
+        assertTrue(wrapped.paid());
+        // Same home slot but absent: probing stops at the first empty slot
+        assertNull(snapshot.find(TuitionIndex.pack(ids.get(2))));
+    }
+
+    @Test
+    void idsThatAreNotEightPrintableCharactersAreNotPacked() {
+        assertEquals(0L, TuitionIndex.pack(null));
+        assertEquals(0L, TuitionIndex.pack("523H005"));
+        assertEquals(0L, TuitionIndex.pack("523H00541"));
+        assertEquals(0L, TuitionIndex.pack("523H 054"));
+        assertEquals(0L, TuitionIndex.pack("523H005é"));
+        long key = TuitionIndex.pack("523H0054");
+        assertNotEquals(0L, key);
+        assertEquals("523H0054", TuitionIndex.unpack(key));
+    }
+
+    @Test
+    void unpackableIdIsAbsentOnlyIfEveryRowWasIndexed() {
+        load(row("523H0054", false));
+        TuitionIndex.Lookup lookup = index.lookup("523H005", SEMESTER);
+        assertTrue(lookup.answered());
+        assertNull(lookup.entry());
+
+        // A row the index could not hold means an unpackable ID might exist in the database
+        load(row("523H0054", false), row("LEGACY-ID", false));
+        assertFalse(index.lookup("LEGACY-ID", SEMESTER).answered());
+        assertTrue(index.lookup("523H0054", SEMESTER).answered());
+    }
+
+    @Test
+    void markPaidIsVisibleToLookups() {
+        load(row("523H0054", false), row("523H0111", false));
+
+        index.markPaid("523H0054", SEMESTER);
+
+        assertTrue(index.lookup("523H0054", SEMESTER).entry().paid());
+        assertFalse(index.lookup("523H0111", SEMESTER).entry().paid());
+    }
+
+    @Test
+    void paidMarkArrivingDuringReloadSurvivesTheSwap() {
+        load(row("523H0054", false));
+
+        // The reload reads the row as unpaid, and the payment is broadcast before the new roster is installed
+        when(repository.findRowsBySemester(SEMESTER)).thenAnswer(invocation -> {
+            byte[] body = (SEMESTER + "|523H0054").getBytes(StandardCharsets.UTF_8);
+            index.onMessage(new DefaultMessage(TuitionIndex.PAID_CHANNEL.getBytes(StandardCharsets.UTF_8), body), null);
+            return List.of(row("523H0054", false));
+        });
+        index.reload();
+
+        assertTrue(index.lookup("523H0054", SEMESTER).entry().paid());
+    }
+}
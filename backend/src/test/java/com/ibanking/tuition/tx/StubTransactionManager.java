@@ -0,0 +1,71 @@
+package com.ibanking.tuition.tx;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transaction manager with no resource behind it. It runs Spring's full transaction lifecycle
+ * (synchronization, {@code isActualTransactionActive}, propagation) so code that opens
+ * transactions can be unit-tested, and counts what happened.
+ */
+public class StubTransactionManager extends AbstractPlatformTransactionManager {
+
+    private static final class StubTransaction {
+        boolean active;
+    }
+
+    private final ThreadLocal<StubTransaction> current = new ThreadLocal<>();
+
+    public final AtomicInteger begins = new AtomicInteger();
+    public final AtomicInteger commits = new AtomicInteger();
+    public final AtomicInteger rollbacks = new AtomicInteger();
+
+    @Override
+    protected Object doGetTransaction() {
+        StubTransaction transaction = current.get();
+        return transaction != null ? transaction : new StubTransaction();
+    }
+
+    @Override
+    protected boolean isExistingTransaction(Object transaction) {
+        return ((StubTransaction) transaction).active;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ((StubTransaction) transaction).active = true;
+        current.set((StubTransaction) transaction);
+        begins.incrementAndGet();
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        commits.incrementAndGet();
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        rollbacks.incrementAndGet();
+    }
+
+    @Override
+    protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+        // A participant failed; the outer transaction sees the exception and rolls back
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        ((StubTransaction) transaction).active = false;
+        current.remove();
+    }
+
+    /**
+     * @return transactions begun and not yet committed or rolled back
+     */
+    public int open() {
+        return begins.get() - commits.get() - rollbacks.get();
+    }
+}
@@ -0,0 +1,174 @@
+package com.ibanking.tuition.tx;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionRetryExecutorTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private StubTransactionManager transactionManager;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        transactionManager = new StubTransactionManager();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private TransactionRetryExecutor executor(double budgetRatio, int budgetMax) {
+        return new TransactionRetryExecutor(transactionManager, meterRegistry, MAX_ATTEMPTS, 1, 5, budgetRatio, budgetMax);
+    }
+
+    private static RuntimeException serializationFailure() {
+        return new CannotAcquireLockException("could not serialize access",
+                new SQLException("could not serialize access due to concurrent update", "40001"));
+    }
+
+    /** Work that fails with {@code failure} the first {@code failures} times it runs */
+    private static Supplier<String> failing(int failures, RuntimeException failure, AtomicInteger runs) {
+        return () -> {
+            assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+            if (runs.incrementAndGet() <= failures) throw failure;
+            return "done";
+        };
+    }
+
+    private double count(String metric) {
+        var counter = meterRegistry.find(metric).tag("operation", "test").counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void conflictIsRetriedInAFreshTransaction() {
+        AtomicInteger runs = new AtomicInteger();
+
+        String result = executor(0.1, 10).execute("test", Isolation.SERIALIZABLE, failing(2, serializationFailure(), runs));
+
+        assertEquals("done", result);
+        assertEquals(3, runs.get());
+        assertEquals(3, transactionManager.begins.get());
+        assertEquals(2, transactionManager.rollbacks.get());
+        assertEquals(1, transactionManager.commits.get());
+        assertEquals(2, count("tx.retry.attempts"));
+        assertEquals(1, count("tx.retry.success.after.retry"));
+    }
+
+    @Test
+    void otherErrorsAreNotRetried() {
+        AtomicInteger runs = new AtomicInteger();
+        RuntimeException failure = new DataIntegrityViolationException("duplicate key",
+                new SQLException("duplicate key value violates unique constraint", "23505"));
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> executor(0.1, 10).execute("test", Isolation.READ_COMMITTED, failing(1, failure, runs)));
+
+        assertSame(failure, thrown);
+        assertEquals(1, runs.get());
+        assertEquals(1, transactionManager.rollbacks.get());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        AtomicInteger runs = new AtomicInteger();
+        RuntimeException failure = serializationFailure();
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> executor(0.1, 10).execute("test", Isolation.SERIALIZABLE, failing(Integer.MAX_VALUE, failure, runs)));
+
+        assertSame(failure, thrown);
+        assertEquals(MAX_ATTEMPTS, runs.get());
+        assertEquals(MAX_ATTEMPTS, transactionManager.rollbacks.get());
+        assertEquals(1, count("tx.retry.gave.up"));
+    }
+
+    @Test
+    void retriesDrawOnABudgetRefilledByFirstAttemptSuccesses() {
+        // One retry in the budget, and each first-attempt success earns half a retry
+        TransactionRetryExecutor executor = executor(0.5, 1);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(RuntimeException.class,
+                () -> executor.execute("test", Isolation.SERIALIZABLE, failing(Integer.MAX_VALUE, serializationFailure(), runs)));
+        assertEquals(2, runs.get(), "one retry, then the budget ran out");
+        assertEquals(1, count("tx.retry.budget.exhausted"));
+
+        runs.set(0);
+        assertThrows(RuntimeException.class,
+                () -> executor.execute("test", Isolation.SERIALIZABLE, failing(Integer.MAX_VALUE, serializationFailure(), runs)));
+        assertEquals(1, runs.get(), "no retry left");
+
+        executor.execute("test", Isolation.SERIALIZABLE, () -> "ok");
+        runs.set(0);
+        assertThrows(RuntimeException.class,
+                () -> executor.execute("test", Isolation.SERIALIZABLE, failing(Integer.MAX_VALUE, serializationFailure(), runs)));
+        assertEquals(1, runs.get(), "half a retry is not enough");
+
+        executor.execute("test", Isolation.SERIALIZABLE, () -> "ok");
+        runs.set(0);
+        assertEquals("done", executor.execute("test", Isolation.SERIALIZABLE, failing(1, serializationFailure(), runs)));
+        assertEquals(2, runs.get(), "two successes bought a retry");
+    }
+
+    @Test
+    void budgetIsCapped() {
+        TransactionRetryExecutor executor = executor(1.0, 1);
+        for (int i = 0; i < 5; i++) {
+            executor.execute("test", Isolation.SERIALIZABLE, () -> "ok");
+        }
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(RuntimeException.class,
+                () -> executor.execute("test", Isolation.SERIALIZABLE, failing(Integer.MAX_VALUE, serializationFailure(), runs)));
+
+        assertEquals(2, runs.get(), "successes beyond the cap must not buy extra retries");
+    }
+
+    @Test
+    void joinsAnOuterTransactionWithoutRetrying() {
+        TransactionRetryExecutor executor = executor(0.1, 10);
+        AtomicInteger runs = new AtomicInteger();
+        RuntimeException failure = serializationFailure();
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> new TransactionTemplate(transactionManager)
+                .execute(status -> executor.execute("test", Isolation.SERIALIZABLE, failing(Integer.MAX_VALUE, failure, runs))));
+
+        assertSame(failure, thrown);
+        assertEquals(1, runs.get());
+        assertEquals(1, transactionManager.begins.get(), "work must run in the outer transaction");
+        assertEquals(0, count("tx.retry.attempts"));
+    }
+
+    @Test
+    void retryableCausesAreFoundAnywhereInTheChain() {
+        assertTrue(TransactionRetryExecutor.isRetryable(new SQLException("serialization failure", "40001")));
+        assertTrue(TransactionRetryExecutor.isRetryable(new SQLException("deadlock detected", "40P01")));
+        assertTrue(TransactionRetryExecutor.isRetryable(
+                new IllegalStateException("wrapped", new RuntimeException(new SQLException("deadlock detected", "40P01")))));
+        assertTrue(TransactionRetryExecutor.isRetryable(new PessimisticLockingFailureException("lock timeout")));
+        assertTrue(TransactionRetryExecutor.isRetryable(new RuntimeException(new OptimisticLockException("stale"))));
+
+        assertFalse(TransactionRetryExecutor.isRetryable(new SQLException("unique violation", "23505")));
+        assertFalse(TransactionRetryExecutor.isRetryable(new SQLException("no state")));
+        assertFalse(TransactionRetryExecutor.isRetryable(new IllegalArgumentException("bad input")));
+        assertFalse(TransactionRetryExecutor.isRetryable(null));
+    }
+}
@@ -0,0 +1,60 @@
+package com.ibanking.tuition.user;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomerTest {
+
+    @Test
+    void normalizeUsernameLowerCases() {
+        assertEquals("alice", Customer.normalizeUsername("Alice"));
+        assertEquals("alice", Customer.normalizeUsername("ALICE"));
+        assertEquals("alice", Customer.normalizeUsername("alice"));
+        assertNull(Customer.normalizeUsername(null));
+    }
+
+    @Test
+    void normalizeUsernameIgnoresDefaultLocale() {
+        // Turkish rules would lower-case I to a dotless i and miss the stored value
+        Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            assertEquals("ivan", Customer.normalizeUsername("IVAN"));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    void persistSetsNormalizedUsername() {
+        Customer customer = new Customer();
+        customer.setUsername("Alice");
+        customer.syncUsernameNormalized();
+        assertEquals("alice", customer.getUsernameNormalized());
+    }
+
+    @Test
+    void updateFollowsUsernameChange() {
+        Customer customer = new Customer();
+        customer.setUsername("Alice");
+        customer.syncUsernameNormalized();
+        customer.setUsername("Bob");
+        customer.syncUsernameNormalized();
+        assertEquals("bob", customer.getUsernameNormalized());
+    }
+
+    @Test
+    void syncRunsOnPersistAndUpdate() throws NoSuchMethodException {
+        Method sync = Customer.class.getDeclaredMethod("syncUsernameNormalized");
+        assertTrue(sync.isAnnotationPresent(PrePersist.class));
+        assertTrue(sync.isAnnotationPresent(PreUpdate.class));
+    }
+}
@@ -1,5 +1,5 @@
 "use client";
-import { useEffect, useMemo, useState } from "react";
+import { useEffect, useMemo, useRef, useState } from "react";
 import axios from "axios";
 import { Toaster, toast } from "react-hot-toast";
 import { Loader2, LogIn, Send, ShieldCheck, User2, Wallet } from "lucide-react";
@@ -12,6 +12,8 @@ export default function Page() {
   const [password, setPassword] = useState("");
   const [loading, setLoading] = useState(false);
   const [token, setToken] = useState<string | null>(null);
+  const refreshTokenRef = useRef<string | null>(null);
+  const refreshInFlight = useRef<Promise<string | null> | null>(null);
   const [me, setMe] = useState<any>(null);
 
   const [studentId, setStudentId] = useState("");
@@ -24,6 +26,7 @@ export default function Page() {
   const [history, setHistory] = useState<any[] | null>(null);
   const [historyOpen, setHistoryOpen] = useState(false);
   const [historyLoading, setHistoryLoading] = useState(false);
+  const [historyCursor, setHistoryCursor] = useState<string | null>(null);
   const [agreeTerms, setAgreeTerms] = useState(false);
   const [showTerms, setShowTerms] = useState(false);
 
@@ -40,34 +43,76 @@ export default function Page() {
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [studentId, token]);
 
-  // Poll transaction status to auto-unlock when transaction expires/fails
+  // Follow transaction status over Server-Sent Events to auto-unlock when transaction expires/fails.
+  // EventSource cannot send the Authorization header, so the stream is read with fetch.
   useEffect(() => {
     if (!transactionId || !token) return;
-    
-    const checkTransactionStatus = async () => {
-      try {
-        const res = await axios.get(`${API}/api/payment/history`, { headers: { Authorization: `Bearer ${token}` } });
-        const txn = res.data?.find((t: any) => t.id === transactionId);
-        
-        if (!txn || (txn.status !== 'PENDING_OTP' && txn.status !== 'PROCESSING')) {
-          // Transaction is no longer pending (expired, failed, or completed)
-          setTransactionId(null);
-          setOtpPopupOpen(false);
-          setOtpPopupMinimized(false);
-          setOtp(["", "", "", "", "", ""]);
-          if (txn?.status === 'FAILED' || txn?.status === 'EXPIRED') {
-            toast.error("The pending transaction has expired or failed. You can now create a new transaction.");
+
+    const controller = new AbortController();
+    let first = true;
+    let finished = false;
+
+    const handleStatus = (txn: any) => {
+      if (first && txn.status === 'PENDING_OTP' && typeof txn.remainingSeconds === 'number') {
+        // Initial event carries the time left on the OTP, e.g. when restoring a transaction after login
+        setOtpTtlSeconds(txn.remainingSeconds);
+      }
+      first = false;
+      if (txn.status !== 'PENDING_OTP' && txn.status !== 'PROCESSING') {
+        // Transaction is no longer pending (expired, failed, or completed)
+        finished = true;
+        setTransactionId(null);
+        setOtpPopupOpen(false);
+        setOtpPopupMinimized(false);
+        setOtp(["", "", "", "", "", ""]);
+        if (txn.status === 'FAILED' || txn.status === 'EXPIRED') {
+          toast.error("The pending transaction has expired or failed. You can now create a new transaction.");
+        }
+      }
+    };
+
+    const follow = async () => {
+      while (!finished && !controller.signal.aborted) {
+        try {
+          const res = await fetch(`${API}/api/payment/${transactionId}/events`, {
+            headers: { Authorization: `Bearer ${token}`, Accept: 'text/event-stream' },
+            signal: controller.signal,
+          });
+          if (!res.ok || !res.body) {
+            if (res.status === 403 || res.status === 404) return;
+            // Expired access token: refreshing changes `token`, which restarts this stream
+            if (res.status === 401) { await refreshSession(); return; }
+            throw new Error(`HTTP ${res.status}`);
           }
+          const reader = res.body.getReader();
+          const decoder = new TextDecoder();
+          let buffer = "";
+          while (true) {
+            const { value, done } = await reader.read();
+            if (done) break;
+            buffer += decoder.decode(value, { stream: true });
+            let sep;
+            while ((sep = buffer.indexOf("\n\n")) >= 0) {
+              const block = buffer.slice(0, sep);
+              buffer = buffer.slice(sep + 2);
+              const data = block.split("\n")
+                .filter((line) => line.startsWith("data:"))
+                .map((line) => line.slice(5))
+                .join("\n");
+              if (data) handleStatus(JSON.parse(data));
+            }
+          }
+        } catch (err) {
+          if (controller.signal.aborted) return;
+          console.log("Transaction status stream interrupted:", err);
         }
-      } catch (err) {
-        console.log("Failed to check transaction status:", err);
+        // Stream ended without a final status: reconnect after a short pause
+        if (!finished) await new Promise((resolve) => setTimeout(resolve, 3000));
       }
     };
-    
-    // Check every 5 seconds
-    const interval = setInterval(checkTransactionStatus, 5000);
-    
-    return () => clearInterval(interval);
+
+    follow();
+    return () => controller.abort();
   }, [transactionId, token]);
 
   useEffect(() => {
@@ -77,12 +122,13 @@ export default function Page() {
         const parsed = JSON.parse(raw);
         if (parsed?.token && parsed?.me) {
           setToken(parsed.token);
+          refreshTokenRef.current = parsed.refreshToken || null;
           // always sync from server to avoid stale balance
           axios.get(`${API}/api/auth/me`, { headers: { Authorization: `Bearer ${parsed.token}` } })
             .then((res) => {
               const synced = { ...parsed.me, ...res.data };
               setMe(synced);
-              localStorage.setItem("auth", JSON.stringify({ token: parsed.token, me: synced }));
+              localStorage.setItem("auth", JSON.stringify({ ...parsed, me: synced }));
             })
             .catch(() => setMe(parsed.me));
         }
@@ -90,7 +136,51 @@ export default function Page() {
     } catch {}
   }, []);
 
-  function persistAuth(nextToken: string, nextMe: any) {
+  // Trade the refresh token for a new access token; concurrent callers share one request
+  function refreshSession(): Promise<string | null> {
+    if (!refreshTokenRef.current) return Promise.resolve(null);
+    if (!refreshInFlight.current) {
+      refreshInFlight.current = axios.post(`${API}/api/auth/refresh`, { refreshToken: refreshTokenRef.current })
+        .then((res) => {
+          refreshTokenRef.current = res.data.refreshToken;
+          setToken(res.data.token);
+          try {
+            const raw = localStorage.getItem("auth");
+            const parsed = raw ? JSON.parse(raw) : {};
+            localStorage.setItem("auth", JSON.stringify({ ...parsed, token: res.data.token, refreshToken: res.data.refreshToken }));
+          } catch {}
+          return res.data.token as string;
+        })
+        .catch(() => {
+          refreshTokenRef.current = null;
+          return null;
+        })
+        .finally(() => { refreshInFlight.current = null; });
+    }
+    return refreshInFlight.current;
+  }
+
+  // Access tokens are short-lived: on a 401, refresh once and replay the request
+  useEffect(() => {
+    const id = axios.interceptors.response.use(undefined, async (error) => {
+      const original = error?.config;
+      if (error?.response?.status !== 401 || !original || original._retried || String(original.url).includes("/api/auth/")) {
+        return Promise.reject(error);
+      }
+      original._retried = true;
+      const nextToken = await refreshSession();
+      if (!nextToken) {
+        logout();
+        return Promise.reject(error);
+      }
+      original.headers = { ...original.headers, Authorization: `Bearer ${nextToken}` };
+      return axios(original);
+    });
+    return () => axios.interceptors.response.eject(id);
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, []);
+
+  function persistAuth(nextToken: string, nextMe: any, nextRefreshToken?: string) {
     setToken(nextToken);
     setMe(nextMe);
     // Reset all UI states when logging in
@@ -104,10 +194,15 @@ export default function Page() {
     setOtpPopupMinimized(false);
     setAgreeTerms(false);
     setShowTerms(false);
-    try { localStorage.setItem("auth", JSON.stringify({ token: nextToken, me: nextMe })); } catch {}
+    if (nextRefreshToken) refreshTokenRef.current = nextRefreshToken;
+    try { localStorage.setItem("auth", JSON.stringify({ token: nextToken, refreshToken: refreshTokenRef.current, me: nextMe })); } catch {}
   }
 
   function logout() {
+    if (refreshTokenRef.current) {
+      axios.post(`${API}/api/auth/logout`, { refreshToken: refreshTokenRef.current }).catch(() => {});
+      refreshTokenRef.current = null;
+    }
     setToken(null);
     setMe(null);
     setTransactionId(null);
@@ -134,28 +229,13 @@ export default function Page() {
       // If there's a pending transaction, restore it
       if (res.data.pendingTransactionId) {
         setTransactionId(res.data.pendingTransactionId);
-        setOtpTtlSeconds(120); // Default TTL, will be updated when we check transaction
+        setOtpTtlSeconds(120); // Default TTL, replaced by the remaining time from the status stream
         setOtpPopupOpen(true);
         setOtpPopupMinimized(false);
         toast.success("Login successful. You have a pending OTP transaction.");
-        
-        // Try to get transaction details to calculate remaining time
-        try {
-          const txnRes = await axios.get(`${API}/api/payment/history`, { headers: { Authorization: `Bearer ${res.data.token}` } });
-          const pendingTxn = txnRes.data?.find((t: any) => t.id === res.data.pendingTransactionId);
-          if (pendingTxn && pendingTxn.createdAt) {
-            const createdAt = new Date(pendingTxn.createdAt);
-            const now = new Date();
-            const elapsed = Math.floor((now.getTime() - createdAt.getTime()) / 1000);
-            const remaining = Math.max(0, 120 - elapsed); // 120s TTL
-            setOtpTtlSeconds(remaining);
-          }
-        } catch (err) {
-          console.log("Could not fetch transaction details:", err);
-        }
       }
       
-      persistAuth(res.data.token, nextMe);
+      persistAuth(res.data.token, nextMe, res.data.refreshToken);
       if (!res.data.pendingTransactionId) {
         toast.success("Login successful");
       }
@@ -255,11 +335,16 @@ export default function Page() {
     }
   }
 
-  async function loadHistory() {
+  async function loadHistory(cursor?: string) {
     setHistoryLoading(true);
     try {
-      const res = await axios.get(`${API}/api/payment/history`, { headers: { Authorization: `Bearer ${token}` } });
-      setHistory(res.data || []);
+      const res = await axios.get(`${API}/api/payment/history`, {
+        params: cursor ? { cursor } : undefined,
+        headers: { Authorization: `Bearer ${token}` },
+      });
+      // Pages are keyed by the cursor of the previous page's last row
+      setHistory((prev) => cursor ? [...(prev || []), ...(res.data || [])] : (res.data || []));
+      setHistoryCursor(res.headers["x-next-cursor"] || null);
       setHistoryOpen(true);
     } catch (e: any) {
       toast.error("Failed to load transaction history");
@@ -304,7 +389,7 @@ export default function Page() {
         {token && me && (
           <div className="flex items-center gap-3">
             <div className="hidden md:block text-white/70">{me.fullName}</div>
-            <button className="btn btn-sm bg-white/10 hover:bg-white/20 text-white" onClick={loadHistory} disabled={historyLoading}>{historyLoading ? 'Loading...' : 'Transaction history'}</button>
+            <button className="btn btn-sm bg-white/10 hover:bg-white/20 text-white" onClick={() => loadHistory()} disabled={historyLoading}>{historyLoading ? 'Loading...' : 'Transaction history'}</button>
             <button className="btn btn-sm bg-white/10 hover:bg-white/20 text-white" onClick={logout}>Logout</button>
           </div>
         )}
@@ -471,6 +556,11 @@ export default function Page() {
                   </tbody>
                 </table>
               </div>
+              {historyCursor && (
+                <div className="mt-4 flex justify-center">
+                  <button className="btn bg-white/10 hover:bg-white/20 text-white" onClick={() => loadHistory(historyCursor)} disabled={historyLoading}>{historyLoading ? 'Loading...' : 'Load more'}</button>
+                </div>
+              )}
             </section>
           )}
         </div>